@@ -0,0 +1,192 @@
+package nl.guitar;
+
+import io.quarkus.runtime.StartupEvent;
+import nl.guitar.data.MusicCatalog;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.event.Observes;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches the config and music folders and tells its listeners when fred.conf/plectrum.conf or a score changed,
+ * so only the plans that were built from them get thrown away.
+ */
+@Singleton
+public class LibraryWatcher {
+    private static final Logger logger = LoggerFactory.getLogger(LibraryWatcher.class);
+
+    public interface Listener {
+        void onConfigChanged();
+
+        void onScoreChanged(File score);
+
+        void onScoreDeleted(File score);
+    }
+
+    @ConfigProperty(name = "music.folder")
+    String MUSIC_FOLDER = "./";
+
+    @ConfigProperty(name = "config.folder")
+    String CONFIG_FOLDER = "./";
+
+    @ConfigProperty(name = "cache.watch", defaultValue = "true")
+    String CACHE_WATCH = "true";
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final MusicCatalog musicCatalog;
+    private WatchService watchService;
+    private Path musicFolder;
+    private Path configFolder;
+
+    public LibraryWatcher(PlayerService playerService, MusicCatalog musicCatalog) {
+        listeners.add(playerService);
+        listeners.add(musicCatalog);
+        this.musicCatalog = musicCatalog;
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        if (Boolean.parseBoolean(CACHE_WATCH)) {
+            start();
+        } else {
+            logger.info("Not watching music and config folders as config set to skip");
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized void start() {
+        if (watchService != null) {
+            return;
+        }
+        try {
+            musicFolder = Paths.get(MUSIC_FOLDER).toAbsolutePath().normalize();
+            configFolder = Paths.get(CONFIG_FOLDER).toAbsolutePath().normalize();
+            watchService = FileSystems.getDefault().newWatchService();
+            musicFolder.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            if (!configFolder.equals(musicFolder)) {
+                configFolder.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            }
+        } catch (IOException e) {
+            logger.error("Failed to watch {} and {}", MUSIC_FOLDER, CONFIG_FOLDER, e);
+            return;
+        }
+        Thread thread = new Thread(this::watch, "library-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Watching {} and {} for changes", musicFolder, configFolder);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close watch service", e);
+            }
+            watchService = null;
+        }
+    }
+
+    private void watch() {
+        WatchService service = watchService;
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path folder = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        onOverflow(folder);
+                    } else {
+                        dispatch(folder, (Path) event.context(), event.kind());
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            logger.info("Stopped watching for changes");
+        }
+    }
+
+    /**
+     * The events that were dropped are unknown, so the config is checked and every score is compared with the hash
+     * the catalog indexed, the scores the catalog has but the folder not anymore were deleted.
+     */
+    void onOverflow(Path folder) {
+        if (folder.equals(configFolder)) {
+            logger.warn("Missed file system events in {}, checking the config", folder);
+            listeners.forEach(Listener::onConfigChanged);
+        }
+        if (folder.equals(musicFolder)) {
+            logger.warn("Missed file system events in {}, checking the scores", folder);
+            Set<String> present = new HashSet<>();
+            File[] scores = folder.toFile().listFiles(MusicCatalog::isScore);
+            if (scores != null) {
+                for (File score : scores) {
+                    present.add(score.getName());
+                    if (!isIndexed(score)) {
+                        dispatch(folder, score.toPath().getFileName(), ENTRY_MODIFY);
+                    }
+                }
+            }
+            for (File score : musicCatalog.getIndexedScores()) {
+                if (!present.contains(score.getName())) {
+                    dispatch(folder, score.toPath().getFileName(), ENTRY_DELETE);
+                }
+            }
+        }
+    }
+
+    private boolean isIndexed(File score) {
+        String indexed = musicCatalog.getIndexedHash(score);
+        try {
+            return indexed != null && indexed.equals(musicCatalog.getHash(score));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void dispatch(Path folder, Path fileName, WatchEvent.Kind<?> kind) {
+        String name = fileName.toString();
+        try {
+            if (folder.equals(configFolder) && ("fred.conf".equals(name) || "plectrum.conf".equals(name))) {
+                logger.info("Config {} changed", name);
+                listeners.forEach(Listener::onConfigChanged);
+            } else if (folder.equals(musicFolder) && MusicCatalog.isScore(name)) {
+                File score = folder.resolve(fileName).toFile();
+                if (kind == ENTRY_DELETE) {
+                    logger.info("Score {} deleted", name);
+                    listeners.forEach(l -> l.onScoreDeleted(score));
+                } else {
+                    logger.debug("Score {} changed", name);
+                    listeners.forEach(l -> l.onScoreChanged(score));
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Failed to handle change of {}", name, e);
+        }
+    }
+}
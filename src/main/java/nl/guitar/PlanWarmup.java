@@ -0,0 +1,115 @@
+package nl.guitar;
+
+import io.quarkus.runtime.StartupEvent;
+import nl.guitar.domain.WarmupStatus;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.event.Observes;
+import javax.inject.Singleton;
+import java.io.File;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles every score in the music folder in the background, so pressing start doesn't have to wait for the
+ * parse. Runs on low priority daemon threads, leaving a core free for the REST calls and the player.
+ */
+@Singleton
+public class PlanWarmup {
+    private static final Logger logger = LoggerFactory.getLogger(PlanWarmup.class);
+
+    @ConfigProperty(name = "warmup.on.startup", defaultValue = "false")
+    String WARMUP_ON_STARTUP = "false";
+
+    private final PlayerService playerService;
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile int total;
+    private volatile boolean cancelled;
+    private volatile long startTime;
+    private ThreadPoolExecutor executorService;
+
+    public PlanWarmup(PlayerService playerService) {
+        this.playerService = playerService;
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        if (Boolean.parseBoolean(WARMUP_ON_STARTUP)) {
+            start();
+        }
+    }
+
+    public synchronized void start() {
+        if (executorService != null && !executorService.isTerminated()) {
+            logger.info("Warm-up already running");
+            return;
+        }
+        File[] files = playerService.getMusicFiles();
+        total = files.length;
+        done.set(0);
+        failed.set(0);
+        cancelled = false;
+        if (files.length == 0) {
+            logger.info("Warm-up has no scores to compile");
+            return;
+        }
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger threadNumber = new AtomicInteger();
+        executorService = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "plan-warmup-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+        startTime = System.currentTimeMillis();
+        logger.info("Warm-up of {} scores started on {} threads", total, threads);
+        for (File file : files) {
+            executorService.execute(() -> precompile(file));
+        }
+        executorService.shutdown();
+    }
+
+    private void precompile(File file) {
+        if (cancelled) {
+            return;
+        }
+        try {
+            playerService.precompile(file);
+        } catch (CancellationException e) {
+            logger.debug("Warm-up of {} cancelled", file.getName());
+            return;
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            logger.warn("Warm-up of {} failed: {}", file.getName(), e.getMessage());
+        }
+        int count = done.incrementAndGet();
+        logger.info("Warm-up {}/{} done ({})", count, total, file.getName());
+        if (count == total) {
+            logger.info("Warm-up finished in {}ms", System.currentTimeMillis() - startTime);
+        }
+    }
+
+    public synchronized void cancel() {
+        cancelled = true;
+        if (executorService != null) {
+            executorService.shutdownNow();
+            logger.info("Warm-up cancelled after {}/{} scores", done.get(), total);
+        }
+    }
+
+    public synchronized WarmupStatus getStatus() {
+        WarmupStatus status = new WarmupStatus();
+        status.running = executorService != null && !executorService.isTerminated();
+        status.cancelled = cancelled;
+        status.total = total;
+        status.done = done.get();
+        status.failed = failed.get();
+        return status;
+    }
+}
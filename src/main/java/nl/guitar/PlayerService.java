@@ -2,19 +2,28 @@ package nl.guitar;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
-import com.google.common.base.Charsets;
-import com.google.common.io.Resources;
 import nl.guitar.data.ConfigRepository;
+import nl.guitar.data.MusicCatalog;
+import nl.guitar.data.PlanCache;
+import nl.guitar.data.PlanFile;
+import nl.guitar.data.PlanKey;
+import nl.guitar.domain.CacheStats;
+import nl.guitar.domain.CatalogEntry;
+import nl.guitar.domain.CatalogPage;
+import nl.guitar.domain.PlayabilityReport;
+import nl.guitar.domain.SchedulerStats;
+import nl.guitar.musicxml.LocalDtdResolver;
 import nl.guitar.musicxml.MusicXmlParserListener;
+import nl.guitar.player.ActionStream;
 import nl.guitar.player.GuitarPlayer;
 import nl.guitar.player.object.GuitarAction;
 import nl.guitar.player.tuning.DropDTuning;
 import nl.guitar.player.tuning.GuitarTuning;
 import nu.xom.ParsingException;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jfugue.integration.CompressedMusicXml;
 import org.jfugue.integration.MusicXmlParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,21 +31,28 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.PostConstruct;
 import javax.inject.Singleton;
 import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-
-import static nl.guitar.util.FileUtil.toSHA1;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 
 @Singleton
-public class PlayerService {
+public class PlayerService implements LibraryWatcher.Listener {
     private static final Logger logger = LoggerFactory.getLogger(PlayerService.class);
     private static final ObjectMapper mapper = new ObjectMapper();
+
     static {
         mapper.enable(SerializationFeature.INDENT_OUTPUT);
         mapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE);
@@ -45,47 +61,142 @@ public class PlayerService {
 
     @ConfigProperty(name = "music.folder")
     String MUSIC_FOLDER = "./";
+
+    @ConfigProperty(name = "dtd.folder", defaultValue = "../musicxml")
+    String DTD_FOLDER = "../musicxml";
+
+    @ConfigProperty(name = "cache.json.export", defaultValue = "false")
+    String CACHE_JSON_EXPORT = "false";
+
+    @ConfigProperty(name = "string.planner", defaultValue = "greedy")
+    String STRING_PLANNER = "greedy";
+
+    @ConfigProperty(name = "parser.parallel", defaultValue = "false")
+    String PARSER_PARALLEL = "false";
+
+    @ConfigProperty(name = "parser.streaming", defaultValue = "false")
+    String PARSER_STREAMING = "false";
+
+    @ConfigProperty(name = "playback.streaming", defaultValue = "false")
+    String PLAYBACK_STREAMING = "false";
+
+    @ConfigProperty(name = "playback.lookahead.ms", defaultValue = "2000")
+    String PLAYBACK_LOOKAHEAD = "2000";
+
+    @ConfigProperty(name = "freds.release.after.ms", defaultValue = "60000")
+    String FREDS_RELEASE_AFTER = "60000";
+
+    @ConfigProperty(name = "plan.cache.max.entries", defaultValue = "16")
+    int PLAN_CACHE_MAX_ENTRIES = 16;
+
+    @ConfigProperty(name = "plan.cache.max.notes", defaultValue = "250000")
+    long PLAN_CACHE_MAX_NOTES = 250000;
+
     private GuitarPlayer guitarPlayer;
-    private String fileContents;
+    private final ConfigRepository configRepository;
+    private final MusicCatalog musicCatalog;
+    private File currentScore;
+    private String currentDtdFolder;
 
     private GuitarTuning guitarTuning;
+    private PlanCache planCache;
+    private final Map<String, String> scoreHashes = new ConcurrentHashMap<>();
+    // checking a plan compiles and simulates all of it, so it runs after the plan was stored instead of before playing
+    private final ExecutorService planChecker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "plan-checker");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
 
-    PlayerService(GuitarPlayer guitarPlayer, ConfigRepository configRepository) {
+    PlayerService(GuitarPlayer guitarPlayer, ConfigRepository configRepository, MusicCatalog musicCatalog) {
         this.guitarPlayer = guitarPlayer;
-        guitarTuning = new DropDTuning(configRepository);
+        this.configRepository = configRepository;
+        this.musicCatalog = musicCatalog;
     }
 
     @PostConstruct
     void postConstruct() {
-        clearCache();
+        planCache = new PlanCache(PLAN_CACHE_MAX_ENTRIES, PLAN_CACHE_MAX_NOTES);
+        deleteCacheFiles(f -> !configTagMatches(f, configRepository.getConfigFingerprint()));
+        deleteOrphanedCacheFiles();
+    }
+
+    /**
+     * A stored plan only knows the hash of its score, so the plans of scores that were edited or removed while not
+     * running are the ones whose hash no score in the music folder has anymore.
+     */
+    private void deleteOrphanedCacheFiles() {
+        File[] scores = getMusicFiles();
+        Set<String> hashes = new HashSet<>();
+        for (File score : scores) {
+            try {
+                hashes.add(getScoreHash(score));
+            } catch (IOException e) {
+                logger.warn("Not removing stored plans, failed to read {}: {}", score, e.getMessage());
+                return;
+            }
+        }
+        int deleted = deleteCacheFiles(f -> !hashes.contains(getPlanScoreHash(f)));
+        if (deleted > 0) {
+            logger.info("Dropped {} stored plans of scores that changed or were removed", deleted);
+        }
     }
 
     public List<String> getAvailableMusic() {
-        List<String> result = new ArrayList<>();
-        logger.info("Loading music from: {}", MUSIC_FOLDER);
-        for (File file : new File(MUSIC_FOLDER).listFiles((f) -> f.getName().endsWith(".xml"))) {
-            result.add(file.getName().substring(0, file.getName().length() - 4));
+        return musicCatalog.getNames();
+    }
+
+    public CatalogPage getCatalog(String filter, int offset, int limit) {
+        return musicCatalog.getPage(filter, offset, limit);
+    }
+
+    /**
+     * @return the scores in the music folder, none when the folder is missing or unreadable
+     */
+    File[] getMusicFiles() {
+        File[] files = new File(MUSIC_FOLDER).listFiles(MusicCatalog::isScore);
+        if (files == null) {
+            logger.warn("Music folder {} can't be read", new File(MUSIC_FOLDER).getAbsoluteFile());
+            return new File[0];
         }
-        Collections.sort(result);
-        return result;
+        return files;
+    }
+
+    /**
+     * @param name a score name from the catalog
+     * @return the file of the score in the music folder, a plain MusicXML one when the catalog does not know it
+     */
+    public String getFileName(String name) {
+        CatalogEntry entry = musicCatalog.getEntry(name);
+        return entry != null && entry.fileName != null ? entry.fileName : name + ".xml";
     }
 
-    public String getCurrentFileContents() {
-        return fileContents;
+    /**
+     * @return the score the next start plays, null before anything was loaded
+     */
+    public File getCurrentScore() {
+        return currentScore;
+    }
+
+    /**
+     * Content hash of a score, from the catalog when the score did not change since it was indexed.
+     */
+    public String getScoreHash(File score) throws IOException {
+        return musicCatalog.getHash(score);
     }
 
     public void load(String folder, String fileToPlay, String dtdFolder) {
-        try {
-            URL url = new File(folder + fileToPlay).toURI().toURL();
-            fileContents = Resources.toString(url, Charsets.UTF_8);
-            fileContents = fileContents.replaceAll("http://www.musicxml.org/dtds/partwise.dtd", dtdFolder + "/partwise.dtd");
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        File score = new File(folder + fileToPlay);
+        if (!score.isFile()) {
+            throw new RuntimeException(new FileNotFoundException(score.getAbsolutePath()));
         }
+        currentScore = score;
+        currentDtdFolder = dtdFolder;
     }
 
     public void load(String folder, String fileToPlay) {
-        load(folder, fileToPlay, "../musicxml");
+        load(folder, fileToPlay, DTD_FOLDER);
     }
 
     public void load(String fileToPlay) {
@@ -97,55 +208,244 @@ public class PlayerService {
     }
 
     void startWithCache(boolean useCache) {
-        try {
-            String hash = toSHA1(fileContents);
-            File cacheFile = new File(MUSIC_FOLDER + "/" + hash + "-" + guitarTuning.getClass().getSimpleName() + ".cache");
-            List<GuitarAction> result;
-            if (useCache) {
-                result = readListFromFile(cacheFile);
-            } else {
-                result = null;
+        play(useCache, null);
+    }
+
+    /**
+     * Plays the current score from the action with the given instruction number, or the first one after it.
+     */
+    public void seek(int instructionNumber) {
+        play(true, actions -> indexOfInstruction(actions, instructionNumber));
+    }
+
+    /**
+     * Plays the current score from the first action that sounds at or after the given ms.
+     */
+    public void seekTime(long timeStamp) {
+        play(true, actions -> {
+            int index = 0;
+            while (index < actions.size() && actions.get(index).timeStamp < timeStamp) {
+                index++;
             }
-            if (result == null) {
-                logger.info("Creating cache file {}", cacheFile.getName());
-                MusicXmlParser parser = new MusicXmlParser();
-                MusicXmlParserListener simpleParserListener = new MusicXmlParserListener(guitarPlayer, guitarTuning);
-                parser.addParserListener(simpleParserListener);
+            return index;
+        });
+    }
 
-                parser.parse(fileContents);
-                parser.fireAfterParsingFinished();
+    /**
+     * Plays the current score on from the action after the last one that sounded.
+     */
+    public void resume() {
+        int lastPlayed = guitarPlayer.getLastPlayedInstruction();
+        play(true, actions -> indexOfInstruction(actions, lastPlayed + 1));
+    }
 
-                result = simpleParserListener.guitarActions();
-                mapper.writeValue(cacheFile, result);
+    static int indexOfInstruction(List<GuitarAction> actions, int instructionNumber) {
+        int low = 0;
+        int high = actions.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (actions.get(middle).instructionNumber < instructionNumber) {
+                low = middle + 1;
+            } else {
+                high = middle;
             }
+        }
+        return low;
+    }
 
-            guitarPlayer.printStats(result);
-            guitarPlayer.resetFreds();
+    /**
+     * @param startIndex picks the action to start from, null plays everything and allows playing while compiling
+     */
+    private void play(boolean useCache, ToIntFunction<List<GuitarAction>> startIndex) {
+        try {
+            GuitarTuning tuning = getGuitarTuning();
+            PlanKey key = getPlanKey(currentScore, tuning);
+            List<GuitarAction> result = useCache ? findPlan(key, currentScore) : null;
+            if (result == null && startIndex == null && Boolean.parseBoolean(PLAYBACK_STREAMING)) {
+                playWhileCompiling(key, currentScore, currentDtdFolder, tuning);
+                return;
+            }
+            if (result == null) {
+                result = compile(currentScore, currentDtdFolder, tuning, null);
+                storePlan(key, currentScore, result);
+            }
 
-            guitarPlayer.playActions(result);
+            boolean completed = guitarPlayer.playFrom(result, startIndex == null ? 0 : startIndex.applyAsInt(result));
             logger.info("Done playing");
 
-            guitarPlayer.resetFreds();
+            releaseFreds(completed);
         } catch (Exception e) {
             logger.error("Failed to load score", e);
             throw new RuntimeException(e);
         }
     }
 
+    private void playWhileCompiling(PlanKey key, File score, String dtdFolder, GuitarTuning tuning) throws Exception {
+        ActionStream actionStream = new ActionStream();
+        Thread compiler = new Thread(() -> {
+            try {
+                List<GuitarAction> result = compile(score, dtdFolder, tuning, actionStream);
+                storePlan(key, score, result);
+                actionStream.finish();
+            } catch (CancellationException e) {
+                logger.info("Compiling {} stopped with the playback", score.getName());
+            } catch (Exception e) {
+                logger.error("Failed to compile score", e);
+                actionStream.fail(e);
+            }
+        }, "plan-compiler");
+        compiler.setDaemon(true);
+
+        compiler.start();
+        boolean completed = false;
+        try {
+            completed = guitarPlayer.playStream(actionStream, Long.parseLong(PLAYBACK_LOOKAHEAD));
+            logger.info("Done playing");
+        } finally {
+            compiler.interrupt();
+            compiler.join();
+            releaseFreds(completed);
+        }
+    }
+
+    /**
+     * After a stop the frets stay pressed for a while, so a resume can carry on without moving them.
+     */
+    private void releaseFreds(boolean completed) {
+        if (completed) {
+            guitarPlayer.resetFreds();
+        } else {
+            guitarPlayer.releaseFredsAfter(Long.parseLong(FREDS_RELEASE_AFTER));
+        }
+    }
+
+    /**
+     * Compiles a score from the music folder into the plan caches without playing it.
+     */
+    void precompile(File file) throws Exception {
+        GuitarTuning tuning = getGuitarTuning();
+        PlanKey key = getPlanKey(file, tuning);
+        if (findPlan(key, file) == null) {
+            storePlan(key, file, compile(file, DTD_FOLDER, tuning, null));
+        }
+    }
+
+    /**
+     * Compiles a score from the music folder, or takes it from the plan caches, and checks it without playing it.
+     */
+    public PlayabilityReport getPlayability(String fileToCheck) throws Exception {
+        File score = new File(MUSIC_FOLDER + fileToCheck);
+        if (!score.isFile()) {
+            throw new FileNotFoundException(score.getAbsolutePath());
+        }
+        GuitarTuning tuning = getGuitarTuning();
+        PlanKey key = getPlanKey(score, tuning);
+        List<GuitarAction> plan = findPlan(key, score);
+        if (plan == null) {
+            plan = compile(score, DTD_FOLDER, tuning, null);
+            storePlan(key, score, plan);
+        }
+        return guitarPlayer.analyze(plan);
+    }
+
+    private PlanKey getPlanKey(File score, GuitarTuning tuning) throws IOException {
+        String hash = musicCatalog.getHash(score);
+        scoreHashes.put(score.getName(), hash);
+        String tuningName = tuning.getClass().getSimpleName();
+        if (isPlanningStrings()) {
+            // a planned plan differs from a greedy one for the same tuning
+            tuningName += "-planned";
+        }
+        return new PlanKey(hash, tuningName, tuning.getConfigFingerprint());
+    }
+
+    private boolean isPlanningStrings() {
+        return "optimal".equals(STRING_PLANNER);
+    }
+
+    private List<GuitarAction> findPlan(PlanKey key, File score) {
+        List<GuitarAction> result = planCache.get(key);
+        if (result == null) {
+            result = readListFromFile(getCacheFile(key));
+            if (result != null) {
+                planCache.put(key, result);
+                updateCatalog(score, result);
+            }
+        }
+        return result;
+    }
+
+    private void storePlan(PlanKey key, File score, List<GuitarAction> plan) throws IOException {
+        File cacheFile = getCacheFile(key);
+        logger.info("Creating cache file {}", cacheFile.getName());
+        PlanFile.write(cacheFile, plan);
+        if (Boolean.parseBoolean(CACHE_JSON_EXPORT)) {
+            mapper.writeValue(new File(cacheFile.getPath() + ".json"), plan);
+        }
+        planCache.put(key, plan);
+        updateCatalog(score, plan);
+    }
+
+    private void updateCatalog(File score, List<GuitarAction> plan) {
+        musicCatalog.updatePlan(score, plan);
+        planChecker.execute(() -> {
+            try {
+                PlayabilityReport report = guitarPlayer.analyze(plan);
+                logger.info("Playability of {}: {}", score.getName(), report);
+                musicCatalog.updateTimingViolations(score, report.simulation.violations);
+            } catch (RuntimeException e) {
+                logger.warn("Checking {} failed: {}", score.getName(), e.getMessage());
+            }
+        });
+    }
+
+    private File getCacheFile(PlanKey key) {
+        return new File(MUSIC_FOLDER + "/" + key.toFileName());
+    }
+
+    private List<GuitarAction> compile(File score, String dtdFolder, GuitarTuning tuning, ActionStream actionStream) throws Exception {
+        MusicXmlParser parser = new MusicXmlParser(new LocalDtdResolver(new File(dtdFolder)));
+        parser.setParallelParts(Boolean.parseBoolean(PARSER_PARALLEL));
+        parser.setStreaming(Boolean.parseBoolean(PARSER_STREAMING));
+        MusicXmlParserListener simpleParserListener = new MusicXmlParserListener(guitarPlayer, tuning, actionStream, isPlanningStrings());
+        parser.addParserListener(simpleParserListener);
+
+        if (CompressedMusicXml.isCompressed(score)) {
+            parser.parse(score);
+        } else {
+            try (InputStream is = new BufferedInputStream(new FileInputStream(score))) {
+                parser.parse(is);
+            }
+        }
+        parser.fireAfterParsingFinished();
+
+        return simpleParserListener.guitarActions();
+    }
+
+    /**
+     * The tuning reads the string ranges from fred.conf, so it is rebuilt whenever the config changed.
+     */
+    private synchronized GuitarTuning getGuitarTuning() {
+        String fingerprint = configRepository.getConfigFingerprint();
+        if (guitarTuning == null || !fingerprint.equals(guitarTuning.getConfigFingerprint())) {
+            if (guitarTuning != null) {
+                logger.info("Config changed, rebuilding tuning");
+            }
+            guitarTuning = new DropDTuning(configRepository);
+        }
+        return guitarTuning;
+    }
 
     private List<GuitarAction> readListFromFile(File file) {
-        if (file.exists()) {
-            long startTime = System.currentTimeMillis();
-            try (InputStream is = new FileInputStream(file)) {
-                List<GuitarAction> result = mapper.readValue(is, new TypeReference<List<GuitarAction>>() {
-                });
+        long startTime = System.currentTimeMillis();
+        try {
+            List<GuitarAction> result = PlanFile.read(file);
+            if (result != null) {
                 logger.info("Reading cache file {} done in {}ms", file, System.currentTimeMillis() - startTime);
-                return result;
-            } catch (IOException ioe) {
-                logger.error("Failed to load file", ioe);
-                return null;
             }
-        } else {
+            return result;
+        } catch (IOException ioe) {
+            logger.error("Failed to load file", ioe);
             return null;
         }
     }
@@ -162,12 +462,92 @@ public class PlayerService {
         }
     }
 
+    public void setSpeed(double speed) {
+        guitarPlayer.setSpeed(speed);
+    }
+
+    public double getSpeed() {
+        return guitarPlayer.getSpeed();
+    }
+
+    public SchedulerStats getPlaybackStats() {
+        return guitarPlayer.getPlaybackStats();
+    }
+
+    public CacheStats getCacheStats() {
+        return planCache.getStats();
+    }
+
     public void clearCache() {
-        final File[] cacheFiles = new File(MUSIC_FOLDER).listFiles((f) -> f.getName().endsWith(".cache"));
-        logger.info("Clearing cache {} files in {}", cacheFiles.length, new File(MUSIC_FOLDER).getAbsoluteFile());
+        planCache.clear();
+        logger.info("Clearing cache in {}", new File(MUSIC_FOLDER).getAbsoluteFile());
+        deleteCacheFiles(f -> true);
+    }
+
+    @Override
+    public void onConfigChanged() {
+        String fingerprint = configRepository.getConfigFingerprint();
+        int removed = planCache.invalidate(key -> !key.getConfigFingerprint().equals(fingerprint));
+        int deleted = deleteCacheFiles(f -> !configTagMatches(f, fingerprint));
+        logger.info("Config changed, dropped {} cached and {} stored plans", removed, deleted);
+    }
+
+    @Override
+    public void onScoreChanged(File score) {
+        String oldHash = scoreHashes.get(score.getName());
+        if (oldHash == null) {
+            // not compiled since starting, the catalog still has the hash the score was indexed with
+            oldHash = musicCatalog.getIndexedHash(score);
+        }
+        if (oldHash == null || (score.isFile() && oldHash.equals(getCurrentHash(score)))) {
+            // only touched, the plans still fit
+            return;
+        }
+        scoreHashes.remove(score.getName());
+        String hash = oldHash;
+        int removed = planCache.invalidate(key -> key.getScoreHash().equals(hash));
+        int deleted = deleteCacheFiles(f -> hash.equals(getPlanScoreHash(f)));
+        logger.info("Score {} changed, dropped {} cached and {} stored plans", score.getName(), removed, deleted);
+    }
+
+    private String getCurrentHash(File score) {
+        try {
+            return getScoreHash(score);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void onScoreDeleted(File score) {
+        onScoreChanged(score);
+    }
+
+    private static boolean configTagMatches(File planFile, String configFingerprint) {
+        String tag = PlanKey.getConfigTag(withoutJson(planFile));
+        return tag != null && tag.equals(PlanKey.getConfigTag(configFingerprint));
+    }
+
+    private static String getPlanScoreHash(File planFile) {
+        return PlanKey.getScoreHash(withoutJson(planFile));
+    }
+
+    private static File withoutJson(File planFile) {
+        if (planFile.getName().endsWith(".json")) {
+            return new File(planFile.getName().substring(0, planFile.getName().length() - 5));
+        }
+        return planFile;
+    }
+
+    private int deleteCacheFiles(Predicate<File> filter) {
+        final File[] cacheFiles = new File(MUSIC_FOLDER).listFiles((f) -> (f.getName().endsWith(PlanFile.EXTENSION) || f.getName().endsWith(PlanFile.EXTENSION + ".json")) && filter.test(f));
+        if (cacheFiles == null) {
+            return 0;
+        }
         for (File file : cacheFiles) {
             logger.info("Removed cache file {}", file);
             file.delete();
         }
+        return cacheFiles.length;
     }
 }
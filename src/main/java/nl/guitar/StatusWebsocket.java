@@ -1,5 +1,7 @@
 package nl.guitar;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,6 +20,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 @ApplicationScoped
 public class StatusWebsocket {
     private static final Logger logger = LoggerFactory.getLogger(StatusWebsocket.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
 
     private static List<Session> sessions = new CopyOnWriteArrayList<>();
 
@@ -41,11 +44,22 @@ public class StatusWebsocket {
     }
 
     public static void sendToAll(String message) {
-        logger.trace("To all: " + message);
+        logger.trace("To all: {}", message);
         for (Session session : sessions) {
             session.getAsyncRemote().sendText(message);
         }
     }
 
+    /**
+     * Sends the command followed by a colon and the payload as json, e.g. <code>metrics:{...}</code>.
+     */
+    public static void sendToAll(String command, Object payload) {
+        try {
+            sendToAll(command + ':' + mapper.writeValueAsString(payload));
+        } catch (JsonProcessingException e) {
+            logger.warn("Failed to send {} to the clients", command, e);
+        }
+    }
+
 
 }
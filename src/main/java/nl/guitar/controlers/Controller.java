@@ -1,10 +1,29 @@
 package nl.guitar.controlers;
 
 public interface Controller {
+    long NO_CLOCK = Long.MIN_VALUE;
+
     void start(long offsetTime);
 
+    /**
+     * @return the current time on the playback clock in ms, or {@link #NO_CLOCK} when this controller doesn't wait
+     */
+    long currentTimestamp();
+
+    /**
+     * @return the current time on the playback clock in µs, or {@link #NO_CLOCK} when this controller doesn't wait
+     */
+    long currentTimestampMicros();
+
     void setServoPulse(int boardNumber, short port, float v);
 
+    /**
+     * @return the last pulse sent to the servo, or NaN when this controller doesn't know
+     */
+    default float getServoPulse(int boardNumber, short port) {
+        return Float.NaN;
+    }
+
     void waitUntilTimestamp(long timeStamp);
 
     void waitMilliseconds(long waitTimeMS);
@@ -3,14 +3,23 @@ package nl.guitar.controlers;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import javax.enterprise.inject.Produces;
+import javax.inject.Singleton;
 
 public class ControllerFactory {
 
     @ConfigProperty(name = "controller")
     String controller;
 
+    /**
+     * One shared controller, so the shadow registers also see the servo moves of the test and config pages.
+     */
     @Produces
+    @Singleton
     public Controller createController() {
+        return new ShadowRegisterController(createDeviceController());
+    }
+
+    private Controller createDeviceController() {
         switch (controller) {
             case "ConsoleController":
                 return new ConsoleController();
@@ -6,6 +6,14 @@ abstract class NoWaitController implements Controller {
         // no op
     }
 
+    public long currentTimestamp() {
+        return NO_CLOCK;
+    }
+
+    public long currentTimestampMicros() {
+        return NO_CLOCK;
+    }
+
     public void waitUntilTimestamp(long timeStamp) {
         // no op
     }
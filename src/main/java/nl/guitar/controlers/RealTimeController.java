@@ -3,14 +3,24 @@ package nl.guitar.controlers;
 import java.util.concurrent.locks.LockSupport;
 
 abstract class RealTimeController implements Controller {
-    private long startTime;
+    private long startNanoTime;
     public void start(long offsetTime) {
-        startTime = System.currentTimeMillis() + offsetTime;
+        startNanoTime = System.nanoTime() + offsetTime * 1000000;
+    }
+
+    public long currentTimestamp() {
+        return Math.floorDiv(System.nanoTime() - startNanoTime, 1000000);
+    }
+
+    public long currentTimestampMicros() {
+        return Math.floorDiv(System.nanoTime() - startNanoTime, 1000);
     }
 
     public void waitUntilTimestamp(long timeStamp) {
-        final long nextTimeStampInTime = startTime + timeStamp;
-        LockSupport.parkUntil(nextTimeStampInTime);
+        final long waitTime = startNanoTime + timeStamp * 1000000 - System.nanoTime();
+        if (waitTime > 0) {
+            LockSupport.parkNanos(waitTime);
+        }
     }
 
     public void waitMilliseconds(long waitTimeMS) {
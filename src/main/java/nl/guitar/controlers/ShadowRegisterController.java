@@ -0,0 +1,88 @@
+package nl.guitar.controlers;
+
+import nl.guitar.domain.ServoWriteStats;
+
+import java.util.Arrays;
+
+/**
+ * Sits in front of another controller and remembers the last pulse written to every servo, so the player can tell
+ * which servos have to move to get the guitar in a given state. Writing the pulse a servo already has is skipped,
+ * on the real boards every write costs four I2C transactions.
+ */
+public class ShadowRegisterController implements Controller {
+    public static final int BOARDS = 8;
+    public static final int PORTS = 16;
+    public static final int SERVOS = BOARDS * PORTS;
+
+    private final Controller delegate;
+    private final float[] pulses = new float[SERVOS];
+    private long issued;
+    private long suppressed;
+
+    public ShadowRegisterController(Controller delegate) {
+        this.delegate = delegate;
+        Arrays.fill(pulses, Float.NaN);
+    }
+
+    public void start(long offsetTime) {
+        delegate.start(offsetTime);
+    }
+
+    public long currentTimestamp() {
+        return delegate.currentTimestamp();
+    }
+
+    public long currentTimestampMicros() {
+        return delegate.currentTimestampMicros();
+    }
+
+    public synchronized void setServoPulse(int boardNumber, short port, float v) {
+        int servo = servo(boardNumber, port);
+        if (servo >= 0 && pulses[servo] == v) {
+            suppressed++;
+            return;
+        }
+        delegate.setServoPulse(boardNumber, port, v);
+        issued++;
+        if (servo >= 0) {
+            pulses[servo] = v;
+        }
+    }
+
+    public synchronized float getServoPulse(int boardNumber, short port) {
+        int servo = servo(boardNumber, port);
+        return servo >= 0 ? pulses[servo] : Float.NaN;
+    }
+
+    /**
+     * Forgets all servo positions, for when they may have been moved without this controller.
+     */
+    public synchronized void forget() {
+        Arrays.fill(pulses, Float.NaN);
+    }
+
+    public synchronized ServoWriteStats getWriteStats() {
+        ServoWriteStats stats = new ServoWriteStats();
+        stats.issued = issued;
+        stats.suppressed = suppressed;
+        return stats;
+    }
+
+    public void waitUntilTimestamp(long timeStamp) {
+        delegate.waitUntilTimestamp(timeStamp);
+    }
+
+    public void waitMilliseconds(long waitTimeMS) {
+        delegate.waitMilliseconds(waitTimeMS);
+    }
+
+    /**
+     * @return the index of the servo in arrays of {@link #SERVOS}, -1 for servos outside the boards
+     */
+    public static int servo(int boardNumber, short port) {
+        if (boardNumber < 0 || boardNumber >= BOARDS || port < 0 || port >= PORTS) {
+            return -1;
+        }
+        return boardNumber * PORTS + port;
+    }
+}
@@ -0,0 +1,164 @@
+package nl.guitar.controlers;
+
+import nl.guitar.domain.FredConfig;
+import nl.guitar.domain.PlectrumConfig;
+import nl.guitar.domain.SimulationReport;
+import nl.guitar.domain.TimingViolation;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static nl.guitar.controlers.ShadowRegisterController.SERVOS;
+import static nl.guitar.controlers.ShadowRegisterController.servo;
+
+/**
+ * Plays on a virtual clock: waiting moves the clock instead of sleeping, so a whole song runs in a fraction of a
+ * second. Every servo moves at a fixed speed from where it was to the new pulse, and every strike checks that the
+ * frets, the plectrum height and the plectrum of that string had finished their last move.
+ *
+ * A strike is a plectrum move while the plectrum height is not at free. Servos that were never written are taken
+ * to already be at their first position.
+ */
+public class SimulationController implements Controller {
+    /**
+     * µs a servo needs per ms of pulse difference, 1ms of pulse is 180 degrees at 0.1s per 60 degrees.
+     */
+    public static final long SERVO_MICROS_PER_PULSE = 300_000;
+    static final int MAX_REPORTED_VIOLATIONS = 50;
+
+    private final long microsPerPulse;
+    private final int[] fretString = new int[SERVOS];
+    private final int[] plectrumString = new int[SERVOS];
+    private final int[] heightServo = new int[6];
+    private final float[] freeHeight = new float[6];
+
+    private final float[] from = new float[SERVOS];
+    private final float[] to = new float[SERVOS];
+    private final long[] moveStart = new long[SERVOS];
+    private final long[] settled = new long[SERVOS];
+
+    private long now;
+    private SimulationReport report = new SimulationReport();
+
+    public SimulationController(List<PlectrumConfig> plectrumConfig, List<List<FredConfig>> fredConfig) {
+        this(plectrumConfig, fredConfig, SERVO_MICROS_PER_PULSE);
+    }
+
+    public SimulationController(List<PlectrumConfig> plectrumConfig, List<List<FredConfig>> fredConfig,
+                                long microsPerPulse) {
+        this.microsPerPulse = microsPerPulse;
+        Arrays.fill(fretString, -1);
+        Arrays.fill(plectrumString, -1);
+        Arrays.fill(to, Float.NaN);
+        for (int string = 0; string < 6; string++) {
+            for (FredConfig config : fredConfig.get(string)) {
+                int servo = servo(config.address, config.port);
+                if (servo >= 0) {
+                    fretString[servo] = string;
+                }
+            }
+            PlectrumConfig config = plectrumConfig.get(string);
+            heightServo[string] = servo(config.adressHeight, config.portHeight);
+            if (heightServo[string] >= 0) {
+                fretString[heightServo[string]] = string;
+            }
+            freeHeight[string] = config.free;
+            int plectrum = servo(config.adressPlectrum, config.portPlectrum);
+            if (plectrum >= 0) {
+                plectrumString[plectrum] = string;
+            }
+        }
+    }
+
+    public void start(long offsetTime) {
+        now = -offsetTime * 1000;
+        report = new SimulationReport();
+        Arrays.fill(settled, now);
+    }
+
+    public long currentTimestamp() {
+        return Math.floorDiv(now, 1000);
+    }
+
+    public long currentTimestampMicros() {
+        return now;
+    }
+
+    public void setServoPulse(int boardNumber, short port, float v) {
+        report.servoWrites++;
+        int servo = servo(boardNumber, port);
+        if (servo < 0) {
+            return;
+        }
+        int string = plectrumString[servo];
+        if (string >= 0 && isStrike(string)) {
+            checkSettled(string, servo);
+        }
+        float position = positionAt(servo, now);
+        from[servo] = position;
+        to[servo] = v;
+        moveStart[servo] = now;
+        settled[servo] = Float.isNaN(position) ? now : now + (long) (Math.abs(v - position) * microsPerPulse);
+    }
+
+    public float getServoPulse(int boardNumber, short port) {
+        int servo = servo(boardNumber, port);
+        return servo < 0 ? Float.NaN : to[servo];
+    }
+
+    public void waitUntilTimestamp(long timeStamp) {
+        long until = timeStamp * 1000;
+        // a real controller spins through the rest of the ms, so waiting always gets past it
+        now = until > now ? until : (Math.floorDiv(now, 1000) + 1) * 1000;
+        report.durationMs = Math.max(report.durationMs, currentTimestamp());
+    }
+
+    public void waitMilliseconds(long waitTimeMS) {
+        now += waitTimeMS * 1000;
+    }
+
+    public SimulationReport getReport() {
+        report.durationMs = Math.max(report.durationMs, currentTimestamp());
+        return report;
+    }
+
+    private boolean isStrike(int string) {
+        int height = heightServo[string];
+        return height >= 0 && !Float.isNaN(to[height]) && to[height] != freeHeight[string];
+    }
+
+    private void checkSettled(int string, int plectrum) {
+        long fretLate = 0;
+        for (int servo = 0; servo < SERVOS; servo++) {
+            if (fretString[servo] == string) {
+                fretLate = Math.max(fretLate, settled[servo] - now);
+            }
+        }
+        if (fretLate > 0) {
+            violation(string, TimingViolation.Kind.FRET_NOT_SETTLED, fretLate);
+        }
+        if (settled[plectrum] > now) {
+            violation(string, TimingViolation.Kind.PLECTRUM_NOT_SETTLED, settled[plectrum] - now);
+        }
+    }
+
+    private void violation(int string, TimingViolation.Kind kind, long shortBy) {
+        report.violations++;
+        if (report.firstViolations.size() < MAX_REPORTED_VIOLATIONS) {
+            TimingViolation violation = new TimingViolation();
+            violation.time = currentTimestamp();
+            violation.string = string;
+            violation.kind = kind;
+            violation.shortByMicros = shortBy;
+            report.firstViolations.add(violation);
+        }
+    }
+
+    private float positionAt(int servo, long time) {
+        if (Float.isNaN(to[servo]) || time >= settled[servo]) {
+            return to[servo];
+        }
+        float fraction = (float) (time - moveStart[servo]) / (settled[servo] - moveStart[servo]);
+        return from[servo] + (to[servo] - from[servo]) * fraction;
+    }
+}
@@ -12,9 +12,12 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Singleton;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 
+import static nl.guitar.util.FileUtil.toSHA1;
+
 @Singleton
 public class ConfigRepository {
     private static final Logger logger = LoggerFactory.getLogger(ConfigRepository.class);
@@ -35,6 +38,25 @@ public class ConfigRepository {
         om.enable(SerializationFeature.INDENT_OUTPUT);
     }
 
+    /**
+     * Hash over the raw fred and plectrum config files, changes whenever one of them is saved or edited.
+     */
+    public String getConfigFingerprint() {
+        try {
+            return toSHA1(readConfigBytes(FRED_CONF), readConfigBytes(PLECTRUM_CONF));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private byte[] readConfigBytes(String name) throws IOException {
+        File configFile = new File(CONFIG_FOLDER + name);
+        if (!configFile.exists()) {
+            return new byte[0];
+        }
+        return Files.readAllBytes(configFile.toPath());
+    }
+
     public List<PlectrumConfig> loadPlectrumConfig() {
         try {
             File configFile = new File(CONFIG_FOLDER + PLECTRUM_CONF);
@@ -0,0 +1,336 @@
+package nl.guitar.data;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import nl.guitar.LibraryWatcher;
+import nl.guitar.domain.CatalogEntry;
+import nl.guitar.domain.CatalogPage;
+import nl.guitar.player.object.GuitarAction;
+import nl.guitar.player.object.GuitarNote;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jfugue.integration.CompressedMusicXml;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+import static nl.guitar.util.FileUtil.toSHA1;
+
+/**
+ * Index of the scores in the music folder, kept in memory and stored next to the scores as catalog.json.
+ * The folder is only scanned once at startup, after that the entries follow the {@link LibraryWatcher} events.
+ */
+@Singleton
+public class MusicCatalog implements LibraryWatcher.Listener {
+    private static final Logger logger = LoggerFactory.getLogger(MusicCatalog.class);
+
+    public static final String CATALOG_FILE = "catalog.json";
+    private static final String[] SCORE_EXTENSIONS = {".xml", CompressedMusicXml.EXTENSION};
+    private static final ObjectMapper om = new ObjectMapper();
+
+    static {
+        om.enable(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    @ConfigProperty(name = "music.folder")
+    String MUSIC_FOLDER = "./";
+
+    private final Map<String, CatalogEntry> entries = new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    @PostConstruct
+    void postConstruct() {
+        long startTime = System.currentTimeMillis();
+        for (CatalogEntry entry : readCatalog()) {
+            entries.put(entry.name, entry);
+        }
+        boolean changed = false;
+        Set<String> found = new HashSet<>();
+        File[] files = new File(MUSIC_FOLDER).listFiles(MusicCatalog::isScore);
+        if (files != null) {
+            for (File file : files) {
+                found.add(getName(file));
+                if (isOutdated(entries.get(getName(file)), file)) {
+                    changed |= refresh(file) != null;
+                }
+            }
+        }
+        changed |= entries.keySet().retainAll(found);
+        if (changed) {
+            writeCatalog();
+        }
+        logger.info("Catalog of {} scores loaded in {}ms", entries.size(), System.currentTimeMillis() - startTime);
+    }
+
+    public List<String> getNames() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    /**
+     * @param filter case insensitive part of the name, null or empty for all scores
+     */
+    public CatalogPage getPage(String filter, int offset, int limit) {
+        String needle = filter == null ? "" : filter.toLowerCase(Locale.ROOT);
+        List<CatalogEntry> matches = entries.values().stream()
+                .filter(e -> needle.isEmpty() || e.name.toLowerCase(Locale.ROOT).contains(needle))
+                .collect(Collectors.toList());
+        CatalogPage page = new CatalogPage();
+        page.total = matches.size();
+        page.offset = Math.max(0, Math.min(offset, matches.size()));
+        page.limit = Math.max(0, limit);
+        page.entries = new ArrayList<>(matches.subList(page.offset, Math.min(matches.size(), page.offset + page.limit)));
+        return page;
+    }
+
+    public CatalogEntry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Content hash of a score, only read from disk again when its size or modification time changed.
+     */
+    public String getHash(File score) throws IOException {
+        CatalogEntry entry = isInMusicFolder(score) ? entries.get(getName(score)) : null;
+        if (entry != null && !isOutdated(entry, score)) {
+            return entry.hash;
+        }
+        return toSHA1(score);
+    }
+
+    /**
+     * @return the hash the score had when it was last indexed, which may be before it changed, null when not indexed
+     */
+    public String getIndexedHash(File score) {
+        CatalogEntry entry = isInMusicFolder(score) ? entries.get(getName(score)) : null;
+        return entry == null ? null : entry.hash;
+    }
+
+    /**
+     * @return the files of the indexed scores, which may have changed or be gone since they were indexed
+     */
+    public List<File> getIndexedScores() {
+        List<File> scores = new ArrayList<>(entries.size());
+        for (CatalogEntry entry : entries.values()) {
+            scores.add(new File(MUSIC_FOLDER, entry.fileName != null ? entry.fileName : entry.name + ".xml"));
+        }
+        return scores;
+    }
+
+    /**
+     * Stores the numbers of a freshly compiled or loaded plan with the score it was compiled from.
+     */
+    public void updatePlan(File score, List<GuitarAction> actions) {
+        if (!isInMusicFolder(score)) {
+            return;
+        }
+        synchronized (this) {
+            CatalogEntry entry = entries.get(getName(score));
+            if (entry == null) {
+                return;
+            }
+            CatalogEntry updated = copy(entry);
+            updated.actionCount = actions.size();
+            updated.durationMs = 0L;
+            updated.errors = 0;
+            int lowest = Integer.MAX_VALUE;
+            int highest = Integer.MIN_VALUE;
+            for (GuitarAction action : actions) {
+                updated.durationMs = Math.max(updated.durationMs, action.timeStamp + action.timeTillNextNote);
+                if (action.error != null) {
+                    updated.errors++;
+                }
+                for (GuitarNote note : action.notesToPlay) {
+                    if (note.getNoteValue() > 0) {
+                        lowest = Math.min(lowest, note.getNoteValue());
+                        highest = Math.max(highest, note.getNoteValue());
+                    }
+                }
+            }
+            updated.lowestNote = lowest == Integer.MAX_VALUE ? null : lowest;
+            updated.highestNote = highest == Integer.MIN_VALUE ? null : highest;
+            if (!samePlan(entry, updated)) {
+                entries.put(updated.name, updated);
+                writeCatalog();
+            }
+        }
+    }
+
+    /**
+     * Stores how many strikes the simulation found the servos could not make in time.
+     */
+    public void updateTimingViolations(File score, int violations) {
+        if (!isInMusicFolder(score)) {
+            return;
+        }
+        synchronized (this) {
+            CatalogEntry entry = entries.get(getName(score));
+            if (entry == null || Objects.equals(entry.timingViolations, violations)) {
+                return;
+            }
+            CatalogEntry updated = copy(entry);
+            updated.timingViolations = violations;
+            entries.put(updated.name, updated);
+            writeCatalog();
+        }
+    }
+
+    @Override
+    public synchronized void onConfigChanged() {
+        // the error and violation counts depend on the config, the next compile fills them in again
+        boolean changed = false;
+        for (CatalogEntry entry : entries.values()) {
+            if (entry.errors != null || entry.timingViolations != null) {
+                CatalogEntry updated = copy(entry);
+                updated.errors = null;
+                updated.timingViolations = null;
+                entries.put(updated.name, updated);
+                changed = true;
+            }
+        }
+        if (changed) {
+            writeCatalog();
+        }
+    }
+
+    @Override
+    public synchronized void onScoreChanged(File score) {
+        if (score.isFile() && refresh(score) != null) {
+            writeCatalog();
+        }
+    }
+
+    @Override
+    public synchronized void onScoreDeleted(File score) {
+        if (entries.remove(getName(score)) != null) {
+            logger.info("Removed {} from the catalog", score.getName());
+            writeCatalog();
+        }
+    }
+
+    private synchronized CatalogEntry refresh(File score) {
+        try {
+            CatalogEntry entry = new CatalogEntry();
+            entry.name = getName(score);
+            entry.fileName = score.getName();
+            entry.size = score.length();
+            entry.lastModified = score.lastModified();
+            entry.hash = toSHA1(score);
+            CatalogEntry old = entries.get(entry.name);
+            if (old != null && Objects.equals(old.hash, entry.hash)) {
+                // only touched, the plan numbers are still valid
+                copyPlan(old, entry);
+            }
+            entries.put(entry.name, entry);
+            logger.debug("Catalog entry {} updated", entry.name);
+            return entry;
+        } catch (IOException e) {
+            logger.warn("Failed to read {} for the catalog", score, e);
+            return null;
+        }
+    }
+
+    private List<CatalogEntry> readCatalog() {
+        File catalogFile = getCatalogFile();
+        if (!catalogFile.exists()) {
+            return new ArrayList<>();
+        }
+        try {
+            return om.readValue(catalogFile, new TypeReference<List<CatalogEntry>>() {});
+        } catch (IOException e) {
+            logger.warn("Failed to read {}, rebuilding the catalog", catalogFile, e);
+            return new ArrayList<>();
+        }
+    }
+
+    private synchronized void writeCatalog() {
+        File catalogFile = getCatalogFile();
+        try {
+            File tmpFile = File.createTempFile(CATALOG_FILE, ".tmp", catalogFile.getAbsoluteFile().getParentFile());
+            om.writeValue(tmpFile, new ArrayList<>(entries.values()));
+            Files.move(tmpFile.toPath(), catalogFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("Failed to write {}", catalogFile, e);
+        }
+    }
+
+    private File getCatalogFile() {
+        return new File(MUSIC_FOLDER + "/" + CATALOG_FILE);
+    }
+
+    private boolean isInMusicFolder(File score) {
+        File folder = score.getAbsoluteFile().getParentFile();
+        return folder != null && folder.toPath().normalize().equals(new File(MUSIC_FOLDER).getAbsoluteFile().toPath().normalize());
+    }
+
+    private static boolean isOutdated(CatalogEntry entry, File score) {
+        return entry == null || entry.hash == null || entry.size != score.length() || entry.lastModified != score.lastModified();
+    }
+
+    /**
+     * Plain MusicXML or compressed .mxl, the catalog name of both is the file name without the extension.
+     */
+    public static boolean isScore(String fileName) {
+        return getExtension(fileName) != null;
+    }
+
+    public static boolean isScore(File file) {
+        return isScore(file.getName());
+    }
+
+    private static String getExtension(String fileName) {
+        for (String extension : SCORE_EXTENSIONS) {
+            if (fileName.endsWith(extension)) {
+                return extension;
+            }
+        }
+        return null;
+    }
+
+    private static String getName(File score) {
+        String fileName = score.getName();
+        String extension = getExtension(fileName);
+        return extension != null ? fileName.substring(0, fileName.length() - extension.length()) : fileName;
+    }
+
+    private static CatalogEntry copy(CatalogEntry entry) {
+        CatalogEntry copy = new CatalogEntry();
+        copy.name = entry.name;
+        copy.fileName = entry.fileName;
+        copy.size = entry.size;
+        copy.lastModified = entry.lastModified;
+        copy.hash = entry.hash;
+        copyPlan(entry, copy);
+        return copy;
+    }
+
+    private static void copyPlan(CatalogEntry from, CatalogEntry to) {
+        to.actionCount = from.actionCount;
+        to.durationMs = from.durationMs;
+        to.lowestNote = from.lowestNote;
+        to.highestNote = from.highestNote;
+        to.errors = from.errors;
+        to.timingViolations = from.timingViolations;
+    }
+
+    private static boolean samePlan(CatalogEntry a, CatalogEntry b) {
+        return Objects.equals(a.actionCount, b.actionCount)
+                && Objects.equals(a.durationMs, b.durationMs)
+                && Objects.equals(a.lowestNote, b.lowestNote)
+                && Objects.equals(a.highestNote, b.highestNote)
+                && Objects.equals(a.errors, b.errors);
+    }
+}
@@ -0,0 +1,107 @@
+package nl.guitar.data;
+
+import nl.guitar.domain.CacheStats;
+import nl.guitar.player.object.GuitarAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Least recently used cache of compiled plans, bounded by the number of plans and by the total number of notes
+ * held, so a few long scores can't push the Pi out of memory.
+ */
+public class PlanCache {
+    private static final Logger logger = LoggerFactory.getLogger(PlanCache.class);
+
+    private final int maxEntries;
+    private final long maxNotes;
+    private final LinkedHashMap<PlanKey, List<GuitarAction>> plans = new LinkedHashMap<>(16, 0.75f, true);
+    private long notes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public PlanCache(int maxEntries, long maxNotes) {
+        this.maxEntries = maxEntries;
+        this.maxNotes = maxNotes;
+    }
+
+    public synchronized List<GuitarAction> get(PlanKey key) {
+        List<GuitarAction> plan = plans.get(key);
+        if (plan == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return plan;
+    }
+
+    public synchronized void put(PlanKey key, List<GuitarAction> plan) {
+        long size = countNotes(plan);
+        if (maxEntries <= 0 || size > maxNotes) {
+            logger.debug("Not caching plan {} with {} notes", key, size);
+            return;
+        }
+        List<GuitarAction> old = plans.put(key, plan);
+        if (old != null) {
+            notes -= countNotes(old);
+        }
+        notes += size;
+        Iterator<Map.Entry<PlanKey, List<GuitarAction>>> eldest = plans.entrySet().iterator();
+        while (plans.size() > maxEntries || notes > maxNotes) {
+            Map.Entry<PlanKey, List<GuitarAction>> entry = eldest.next();
+            notes -= countNotes(entry.getValue());
+            eldest.remove();
+            evictions++;
+            logger.debug("Evicted plan {}", entry.getKey());
+        }
+    }
+
+    /**
+     * Removes every plan whose key matches.
+     * @return the number of plans removed
+     */
+    public synchronized int invalidate(Predicate<PlanKey> filter) {
+        int removed = 0;
+        Iterator<Map.Entry<PlanKey, List<GuitarAction>>> entries = plans.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<PlanKey, List<GuitarAction>> entry = entries.next();
+            if (filter.test(entry.getKey())) {
+                notes -= countNotes(entry.getValue());
+                entries.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public synchronized void clear() {
+        plans.clear();
+        notes = 0;
+    }
+
+    public synchronized CacheStats getStats() {
+        CacheStats stats = new CacheStats();
+        stats.hits = hits;
+        stats.misses = misses;
+        stats.evictions = evictions;
+        stats.entries = plans.size();
+        stats.notes = notes;
+        stats.maxEntries = maxEntries;
+        stats.maxNotes = maxNotes;
+        return stats;
+    }
+
+    private static long countNotes(List<GuitarAction> plan) {
+        long count = 0;
+        for (GuitarAction action : plan) {
+            count += action.notesToPlay.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,144 @@
+package nl.guitar.data;
+
+import nl.guitar.player.object.GuitarAction;
+import nl.guitar.player.object.GuitarNote;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary storage of a compiled action plan.
+ *
+ * Layout (big endian):
+ * <pre>
+ * int   magic 'GPLN'
+ * short version
+ * int   action count
+ * per action:
+ *   int   instruction number
+ *   long  time stamp (ms)
+ *   long  time till next note (ms)
+ *   double beat position (quarter notes)
+ *   double length in beats till the next action
+ *   short error length in bytes, -1 when there is no error, followed by the UTF-8 bytes
+ *   byte  note count
+ *   per note: byte string number, byte fred, byte flags, byte note value
+ * </pre>
+ * Reading maps the file into memory, so a cached plan only costs the objects handed to the player.
+ */
+public final class PlanFile {
+    private static final Logger logger = LoggerFactory.getLogger(PlanFile.class);
+
+    public static final String EXTENSION = ".cache";
+
+    private static final int MAGIC = 0x47504C4E;
+    private static final short VERSION = 2;
+    private static final byte FLAG_HIT = 1;
+
+    private PlanFile() {
+    }
+
+    public static void write(File file, List<GuitarAction> actions) throws IOException {
+        File tmpFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(actions.size());
+            for (GuitarAction action : actions) {
+                out.writeInt(action.instructionNumber);
+                out.writeLong(action.timeStamp);
+                out.writeLong(action.timeTillNextNote);
+                out.writeDouble(action.beat);
+                out.writeDouble(action.beats);
+                if (action.error == null) {
+                    out.writeShort(-1);
+                } else {
+                    byte[] error = action.error.getBytes(StandardCharsets.UTF_8);
+                    out.writeShort(error.length);
+                    out.write(error);
+                }
+                out.writeByte(action.notesToPlay.size());
+                for (GuitarNote note : action.notesToPlay) {
+                    out.writeByte(note.getStringNumber());
+                    out.writeByte(note.getFred());
+                    out.writeByte(note.isHit() ? FLAG_HIT : 0);
+                    out.writeByte(note.getNoteValue());
+                }
+            }
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the stored plan, or null when the file does not exist or was written in another format
+     */
+    public static List<GuitarAction> read(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        }
+    }
+
+    static List<GuitarAction> read(ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                logger.warn("Not a plan file, ignoring it");
+                return null;
+            }
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                logger.info("Plan file has version {} instead of {}, ignoring it", version, VERSION);
+                return null;
+            }
+            int actionCount = buffer.getInt();
+            List<GuitarAction> actions = new ArrayList<>(actionCount);
+            for (int i = 0; i < actionCount; i++) {
+                GuitarAction action = new GuitarAction();
+                action.instructionNumber = buffer.getInt();
+                action.timeStamp = buffer.getLong();
+                action.timeTillNextNote = buffer.getLong();
+                action.beat = buffer.getDouble();
+                action.beats = buffer.getDouble();
+                short errorLength = buffer.getShort();
+                if (errorLength >= 0) {
+                    byte[] error = new byte[errorLength];
+                    buffer.get(error);
+                    action.error = new String(error, StandardCharsets.UTF_8);
+                }
+                int noteCount = buffer.get();
+                List<GuitarNote> notes = new ArrayList<>(noteCount);
+                for (int n = 0; n < noteCount; n++) {
+                    short stringNumber = buffer.get();
+                    int fred = buffer.get();
+                    boolean hit = (buffer.get() & FLAG_HIT) != 0;
+                    int noteValue = buffer.get();
+                    notes.add(new GuitarNote(stringNumber, fred, hit, noteValue));
+                }
+                action.notesToPlay = notes;
+                actions.add(action);
+            }
+            return actions;
+        } catch (BufferUnderflowException e) {
+            logger.warn("Plan file is truncated, ignoring it");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package nl.guitar.data;
+
+import java.io.File;
+
+/**
+ * Identifies a compiled plan: the score it was compiled from, the tuning and the fred/plectrum config it was
+ * compiled against. A plan is only reusable when all three match.
+ */
+public final class PlanKey {
+    private final String scoreHash;
+    private final String tuning;
+    private final String configFingerprint;
+
+    public PlanKey(String scoreHash, String tuning, String configFingerprint) {
+        this.scoreHash = scoreHash;
+        this.tuning = tuning;
+        this.configFingerprint = configFingerprint;
+    }
+
+    public String getScoreHash() {
+        return scoreHash;
+    }
+
+    public String getTuning() {
+        return tuning;
+    }
+
+    public String getConfigFingerprint() {
+        return configFingerprint;
+    }
+
+    /**
+     * Name used for the plan on disk, the config fingerprint is shortened as it only needs to tell configs apart.
+     */
+    public String toFileName() {
+        return scoreHash + "-" + tuning + "-" + getConfigTag(configFingerprint) + PlanFile.EXTENSION;
+    }
+
+    public static String getConfigTag(String configFingerprint) {
+        return configFingerprint.substring(0, 8);
+    }
+
+    /**
+     * @return the config tag of a plan file name, or null when the name is not one made by {@link #toFileName()}
+     */
+    public static String getConfigTag(File planFile) {
+        String name = planFile.getName();
+        int tagStart = name.lastIndexOf('-') + 1;
+        int tagEnd = name.length() - PlanFile.EXTENSION.length();
+        if (tagStart == 0 || !name.endsWith(PlanFile.EXTENSION) || tagEnd <= tagStart) {
+            return null;
+        }
+        return name.substring(tagStart, tagEnd);
+    }
+
+    /**
+     * @return the score hash of a plan file name, or null when the name is not one made by {@link #toFileName()}
+     */
+    public static String getScoreHash(File planFile) {
+        String name = planFile.getName();
+        int hashEnd = name.indexOf('-');
+        return hashEnd <= 0 || getConfigTag(planFile) == null ? null : name.substring(0, hashEnd);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        PlanKey that = (PlanKey) o;
+
+        if (!scoreHash.equals(that.scoreHash)) return false;
+        if (!tuning.equals(that.tuning)) return false;
+        return configFingerprint.equals(that.configFingerprint);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = scoreHash.hashCode();
+        result = 31 * result + tuning.hashCode();
+        result = 31 * result + configFingerprint.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PlanKey{" +
+                "scoreHash=" + scoreHash +
+                ", tuning=" + tuning +
+                ", configFingerprint=" + configFingerprint +
+                '}';
+    }
+}
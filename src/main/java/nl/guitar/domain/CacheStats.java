@@ -0,0 +1,22 @@
+package nl.guitar.domain;
+
+public class CacheStats {
+    public long hits;
+    public long misses;
+    public long evictions;
+    public int entries;
+    public long notes;
+    public int maxEntries;
+    public long maxNotes;
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", entries=" + entries +
+                ", notes=" + notes +
+                '}';
+    }
+}
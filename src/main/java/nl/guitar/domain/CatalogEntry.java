@@ -0,0 +1,31 @@
+package nl.guitar.domain;
+
+/**
+ * What the catalog knows about one score. The plan fields stay null until the score has been compiled once.
+ */
+public class CatalogEntry {
+    public String name;
+    public String fileName;
+    public long size;
+    public long lastModified;
+    public String hash;
+    public Integer actionCount;
+    public Long durationMs;
+    public Integer lowestNote;
+    public Integer highestNote;
+    public Integer errors;
+    public Integer timingViolations;
+
+    @Override
+    public String toString() {
+        return "CatalogEntry{" +
+                "name='" + name + '\'' +
+                ", size=" + size +
+                ", hash='" + hash + '\'' +
+                ", actionCount=" + actionCount +
+                ", durationMs=" + durationMs +
+                ", errors=" + errors +
+                ", timingViolations=" + timingViolations +
+                '}';
+    }
+}
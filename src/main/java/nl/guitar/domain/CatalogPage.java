@@ -0,0 +1,20 @@
+package nl.guitar.domain;
+
+import java.util.List;
+
+public class CatalogPage {
+    public int total;
+    public int offset;
+    public int limit;
+    public List<CatalogEntry> entries;
+
+    @Override
+    public String toString() {
+        return "CatalogPage{" +
+                "total=" + total +
+                ", offset=" + offset +
+                ", limit=" + limit +
+                ", entries=" + entries.size() +
+                '}';
+    }
+}
@@ -0,0 +1,28 @@
+package nl.guitar.domain;
+
+/**
+ * How late commands were sent compared to their planned time, all values in µs.
+ */
+public class LatencyStats {
+    public long count;
+    public long early;
+    public long mean;
+    public long p50;
+    public long p90;
+    public long p99;
+    public long p999;
+    public long max;
+
+    @Override
+    public String toString() {
+        return "LatencyStats{" +
+                "count=" + count +
+                ", mean=" + mean +
+                ", p50=" + p50 +
+                ", p90=" + p90 +
+                ", p99=" + p99 +
+                ", p999=" + p999 +
+                ", max=" + max +
+                '}';
+    }
+}
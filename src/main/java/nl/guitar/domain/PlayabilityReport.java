@@ -0,0 +1,51 @@
+package nl.guitar.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * What a plan asks of the robot. Gaps and durations are in ms, a string gap of -1 means the string is struck at
+ * most once. The needed string gaps follow from how far the servos of the string travel. The simulation is null
+ * when the plan was not played on the simulation controller.
+ */
+public class PlayabilityReport {
+    public int actions;
+    public int errors;
+    public List<String> errorMessages = new ArrayList<>();
+    public Integer lowestNote;
+    public Integer highestNote;
+    public long shortestNoteMs;
+    public long durationMs;
+    public long[] minStringGapMs;
+    public long[] neededStringGapMs;
+    public int maxFretChangesPerSecond;
+    public int busiestFretServoBoard = -1;
+    public int busiestFretServoPort = -1;
+    public int busiestBoard = -1;
+    public long busiestBoardWrites;
+    public int busiestBoardPeakPerSecond;
+    public boolean playable;
+    public SimulationReport simulation;
+
+    @Override
+    public String toString() {
+        return "PlayabilityReport{" +
+                "actions=" + actions +
+                ", errors=" + errors +
+                ", lowestNote=" + lowestNote +
+                ", highestNote=" + highestNote +
+                ", shortestNoteMs=" + shortestNoteMs +
+                ", durationMs=" + durationMs +
+                ", minStringGapMs=" + Arrays.toString(minStringGapMs) +
+                ", neededStringGapMs=" + Arrays.toString(neededStringGapMs) +
+                ", maxFretChangesPerSecond=" + maxFretChangesPerSecond +
+                ", busiestFretServo=" + busiestFretServoBoard + ':' + busiestFretServoPort +
+                ", busiestBoard=" + busiestBoard +
+                ", busiestBoardWrites=" + busiestBoardWrites +
+                ", busiestBoardPeakPerSecond=" + busiestBoardPeakPerSecond +
+                ", playable=" + playable +
+                ", simulation=" + simulation +
+                '}';
+    }
+}
@@ -0,0 +1,20 @@
+package nl.guitar.domain;
+
+public class SchedulerStats {
+    public long dispatched;
+    public long late;
+    public boolean playing;
+    public LatencyStats prepare;
+    public LatencyStats hit;
+
+    @Override
+    public String toString() {
+        return "SchedulerStats{" +
+                "dispatched=" + dispatched +
+                ", late=" + late +
+                ", playing=" + playing +
+                ", prepare=" + prepare +
+                ", hit=" + hit +
+                '}';
+    }
+}
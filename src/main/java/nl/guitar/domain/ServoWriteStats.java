@@ -0,0 +1,17 @@
+package nl.guitar.domain;
+
+/**
+ * Servo writes sent to the boards and the ones skipped because the servo already had that pulse.
+ */
+public class ServoWriteStats {
+    public long issued;
+    public long suppressed;
+
+    @Override
+    public String toString() {
+        return "ServoWriteStats{" +
+                "issued=" + issued +
+                ", suppressed=" + suppressed +
+                '}';
+    }
+}
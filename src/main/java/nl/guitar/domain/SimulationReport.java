@@ -0,0 +1,25 @@
+package nl.guitar.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of playing a plan on the simulation controller. Only the first violations are kept, the count has them
+ * all.
+ */
+public class SimulationReport {
+    public long durationMs;
+    public long servoWrites;
+    public int violations;
+    public List<TimingViolation> firstViolations = new ArrayList<>();
+
+    @Override
+    public String toString() {
+        return "SimulationReport{" +
+                "durationMs=" + durationMs +
+                ", servoWrites=" + servoWrites +
+                ", violations=" + violations +
+                ", firstViolations=" + firstViolations +
+                '}';
+    }
+}
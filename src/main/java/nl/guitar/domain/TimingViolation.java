@@ -0,0 +1,32 @@
+package nl.guitar.domain;
+
+/**
+ * A strike the servos could not have made in time, found by simulating a plan.
+ */
+public class TimingViolation {
+    public enum Kind {
+        /**
+         * A fret or the plectrum height of the string was still moving.
+         */
+        FRET_NOT_SETTLED,
+        /**
+         * The plectrum had not reached its previous position yet.
+         */
+        PLECTRUM_NOT_SETTLED
+    }
+
+    public long time;
+    public int string;
+    public Kind kind;
+    public long shortByMicros;
+
+    @Override
+    public String toString() {
+        return "TimingViolation{" +
+                "time=" + time +
+                ", string=" + string +
+                ", kind=" + kind +
+                ", shortByMicros=" + shortByMicros +
+                '}';
+    }
+}
@@ -0,0 +1,20 @@
+package nl.guitar.domain;
+
+public class WarmupStatus {
+    public boolean running;
+    public boolean cancelled;
+    public int total;
+    public int done;
+    public int failed;
+
+    @Override
+    public String toString() {
+        return "WarmupStatus{" +
+                "running=" + running +
+                ", cancelled=" + cancelled +
+                ", total=" + total +
+                ", done=" + done +
+                ", failed=" + failed +
+                '}';
+    }
+}
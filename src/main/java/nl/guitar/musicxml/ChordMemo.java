@@ -0,0 +1,157 @@
+package nl.guitar.musicxml;
+
+import nl.guitar.player.object.GuitarAction;
+import nl.guitar.player.object.GuitarNote;
+import org.jfugue.theory.Note;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Strings picked earlier for a chord, keyed by its sorted note values and the strings the action before still
+ * takes. A listener compiles against a single tuning and keeps its own memo, so the tuning is part of the key.
+ */
+final class ChordMemo {
+    private final Map<Key, Entry> entries = new HashMap<>();
+    private long hits;
+    private long misses;
+    private long hitNanos;
+    private long missNanos;
+
+    /**
+     * The lookups fill the probe key in place, only a miss copies it into a key of its own.
+     */
+    static final class Key {
+        private int[] noteValues;
+        private int noteCount;
+        private final int[] stringsTaken;
+        private int hash;
+
+        Key(int[] noteValues, int noteCount, int[] stringsTaken) {
+            this.noteValues = noteValues;
+            this.noteCount = noteCount;
+            this.stringsTaken = stringsTaken;
+            rehash();
+        }
+
+        private void rehash() {
+            int result = 1;
+            for (int i = 0; i < noteCount; i++) {
+                result = 31 * result + noteValues[i];
+            }
+            hash = 31 * result + Arrays.hashCode(stringsTaken);
+        }
+
+        Key copy() {
+            return new Key(Arrays.copyOf(noteValues, noteCount), noteCount, stringsTaken.clone());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key that = (Key) o;
+            if (noteCount != that.noteCount || hash != that.hash) {
+                return false;
+            }
+            for (int i = 0; i < noteCount; i++) {
+                if (noteValues[i] != that.noteValues[i]) {
+                    return false;
+                }
+            }
+            return Arrays.equals(stringsTaken, that.stringsTaken);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    static final class Entry {
+        final short[] strings;
+        final String strategy;
+
+        Entry(short[] strings, String strategy) {
+            this.strings = strings;
+            this.strategy = strategy;
+        }
+    }
+
+    private final Key probe = new Key(new int[8], 0, new int[6]);
+
+    /**
+     * @param notes sorted the way {@link nl.guitar.player.GuitarPlayer#calculateNotes} sorts them
+     */
+    Entry get(List<Note> notes, int[] stringsTaken) {
+        if (probe.noteValues.length < notes.size()) {
+            probe.noteValues = new int[notes.size()];
+        }
+        int count = 0;
+        for (Note note : notes) {
+            if (!note.isRest()) {
+                probe.noteValues[count++] = note.getValue();
+            }
+        }
+        probe.noteCount = count;
+        System.arraycopy(stringsTaken, 0, probe.stringsTaken, 0, probe.stringsTaken.length);
+        probe.rehash();
+        return entries.get(probe);
+    }
+
+    void hit(long nanos) {
+        hits++;
+        hitNanos += nanos;
+    }
+
+    /**
+     * Remembers the strings of the action for the chord last looked up, unless the calculation broke off before
+     * every note got one.
+     */
+    void miss(GuitarAction action, String strategy, long nanos) {
+        misses++;
+        missNanos += nanos;
+        if (action.notesToPlay == null || action.notesToPlay.size() != probe.noteCount) {
+            return;
+        }
+        short[] strings = new short[probe.noteCount];
+        for (int i = 0; i < strings.length; i++) {
+            GuitarNote note = action.notesToPlay.get(i);
+            strings[i] = note.getStringNumber();
+        }
+        entries.put(probe.copy(), new Entry(strings, strategy));
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return ms the hits saved, estimated from the average time of a hit and a miss
+     */
+    long getSavedMillis() {
+        if (hits == 0 || misses == 0) {
+            return 0;
+        }
+        long saved = hits * (missNanos / misses - hitNanos / hits);
+        return Math.max(0, saved / 1_000_000);
+    }
+
+    @Override
+    public String toString() {
+        long lookups = hits + misses;
+        return "ChordMemo{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", hitRate=" + (lookups == 0 ? 0 : hits * 100 / lookups) + '%' +
+                ", savedMs=" + getSavedMillis() +
+                '}';
+    }
+}
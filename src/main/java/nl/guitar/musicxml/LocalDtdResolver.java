@@ -0,0 +1,39 @@
+package nl.guitar.musicxml;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+import java.io.File;
+import java.io.StringReader;
+
+/**
+ * Serves the MusicXML DTDs from the bundled musicxml folder instead of downloading them from musicxml.org.
+ * Unknown remote entities resolve to an empty document, the parser never goes to the network.
+ */
+public class LocalDtdResolver implements EntityResolver {
+    private static final Logger logger = LoggerFactory.getLogger(LocalDtdResolver.class);
+
+    private final File dtdFolder;
+
+    public LocalDtdResolver(File dtdFolder) {
+        this.dtdFolder = dtdFolder;
+    }
+
+    @Override
+    public InputSource resolveEntity(String publicId, String systemId) {
+        if (systemId == null || !(systemId.startsWith("http://") || systemId.startsWith("https://"))) {
+            return null;
+        }
+        File localFile = new File(dtdFolder, systemId.substring(systemId.lastIndexOf('/') + 1));
+        if (localFile.isFile()) {
+            logger.debug("Resolved {} to {}", systemId, localFile);
+            return new InputSource(localFile.toURI().toString());
+        }
+        logger.warn("No local copy of {} in {}, skipping it", systemId, dtdFolder);
+        InputSource empty = new InputSource(new StringReader(""));
+        empty.setSystemId(systemId);
+        return empty;
+    }
+}
@@ -1,15 +1,21 @@
 package nl.guitar.musicxml;
 
+import nl.guitar.player.ActionStream;
 import nl.guitar.player.GuitarPlayer;
+import nl.guitar.player.TempoMap;
 import nl.guitar.player.object.GuitarAction;
 import nl.guitar.player.object.GuitarNote;
+import nl.guitar.player.object.NoteComparator;
 import nl.guitar.player.strategy.ComplexStringStrategy;
 import nl.guitar.player.strategy.HighStringStrategy;
 import nl.guitar.player.strategy.LowStringStrategy;
+import nl.guitar.player.strategy.PlannedStringStrategy;
+import nl.guitar.player.strategy.StringPlanner;
 import nl.guitar.player.strategy.StringStrategy;
 import nl.guitar.player.tuning.GuitarTuning;
 import org.jfugue.parser.Parser;
 import org.jfugue.parser.ParserListenerAdapter;
+import org.jfugue.parser.PrimitiveNoteListener;
 import org.jfugue.theory.Note;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,23 +23,65 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
-public class MusicXmlParserListener extends ParserListenerAdapter {
+public class MusicXmlParserListener extends ParserListenerAdapter implements PrimitiveNoteListener {
     private static final Logger logger = LoggerFactory.getLogger(MusicXmlParserListener.class);
 
     private final GuitarPlayer guitarPlayer;
     private List<Note> notes = new ArrayList<>();
+    private final List<Note> notePool = new ArrayList<>();
     private List<GuitarAction> guitarActions = new ArrayList<>();
-    private long currentTimestamp = 0;
+    private double currentBeat = 0;
+    private final TempoMap tempoMap = new TempoMap();
     private final GuitarTuning guitarTuning;
+    private final long[] minStringGaps;
     private GuitarAction lastAction;
     private final long parseStartTime = System.currentTimeMillis();
     private final List<StringStrategy> stringStrategies;
+    private final ActionStream actionStream;
+    private final StringPlanner stringPlanner;
+    private final List<Chord> chords = new ArrayList<>();
+    private final ChordMemo chordMemo = new ChordMemo();
+    private final PlannedStringStrategy memoStrings = new PlannedStringStrategy();
+    private final int[] stringsTaken = new int[6];
+    private final int[] candidateStringsTaken = new int[6];
+
+    /**
+     * Notes that sound together, kept until the whole score is known when the strings are planned over the score.
+     */
+    private static final class Chord {
+        final List<Note> notes;
+        final double beat;
+        final double beats;
+
+        Chord(List<Note> notes, double beat, double beats) {
+            this.notes = notes;
+            this.beat = beat;
+            this.beats = beats;
+        }
+    }
 
     public MusicXmlParserListener(GuitarPlayer guitarPlayer, GuitarTuning guitarTuning) {
+        this(guitarPlayer, guitarTuning, null);
+    }
+
+    public MusicXmlParserListener(GuitarPlayer guitarPlayer, GuitarTuning guitarTuning, ActionStream actionStream) {
+        this(guitarPlayer, guitarTuning, actionStream, false);
+    }
+
+    /**
+     * @param actionStream receives every action as soon as it is compiled, may be null
+     * @param planStrings  picks the strings over the whole score with a {@link StringPlanner} instead of chord by
+     *                     chord, the actions are then only compiled once the score is parsed
+     */
+    public MusicXmlParserListener(GuitarPlayer guitarPlayer, GuitarTuning guitarTuning, ActionStream actionStream, boolean planStrings) {
         try {
             this.guitarTuning = guitarTuning;
             this.guitarPlayer = guitarPlayer;
+            this.minStringGaps = guitarPlayer.loadMinStringGaps();
+            this.actionStream = actionStream;
+            this.stringPlanner = planStrings ? new StringPlanner(guitarTuning, minStringGaps) : null;
             stringStrategies = Arrays.asList(new ComplexStringStrategy(guitarTuning), new HighStringStrategy(), new LowStringStrategy());
             logger.info("Pre calculation of notes started");
         } catch (Exception e) {
@@ -43,12 +91,14 @@ public class MusicXmlParserListener extends ParserListenerAdapter {
     }
 
     public void onTempoChanged(int tempoBPM) {
-        guitarPlayer.setTempo(tempoBPM);
+        logger.info("Tempo changed to = {}", tempoBPM);
+        tempoMap.setTempo(currentBeat, tempoBPM);
     }
 
     @Override
     public void onBarLineParsed(long id) {
         super.onBarLineParsed(id);
+        checkInterrupted();
     }
 
     @Override
@@ -60,14 +110,21 @@ public class MusicXmlParserListener extends ParserListenerAdapter {
     public void afterParsingFinished() {
         try {
             logger.debug("Parse done in {}ms", System.currentTimeMillis() - parseStartTime);
-            GuitarAction bestAction = getBestAction();
-            bestAction.timeStamp = currentTimestamp;
-            if (!bestAction.notesToPlay.isEmpty()) {
-                guitarActions.add(bestAction);
+            if (stringPlanner != null) {
+                if (!notes.isEmpty()) {
+                    addChord();
+                }
+                compilePlannedChords();
+            } else {
+                GuitarAction bestAction = getBestAction();
+                setTime(bestAction);
+                addAction(bestAction);
             }
             notes.clear();
             lastAction = null;
-            System.gc();
+            if (stringPlanner == null) {
+                logger.info("Chord assignments: {}", chordMemo);
+            }
             logger.info("Calculation done starting to play total calculation time {}ms", System.currentTimeMillis() - parseStartTime);
         } catch (Exception e) {
             logger.error("Failed to parse music xml", e);
@@ -75,24 +132,150 @@ public class MusicXmlParserListener extends ParserListenerAdapter {
         }
     }
 
+    /**
+     * Places the action on the current beat, its times follow from the tempo map so they don't drift on rounding.
+     */
+    private void setTime(GuitarAction action) {
+        action.beat = currentBeat;
+        action.timeStamp = tempoMap.toMillis(currentBeat);
+        if (action.beats > 0) {
+            action.timeTillNextNote = tempoMap.toMillis(currentBeat + action.beats) - action.timeStamp;
+        }
+    }
+
+    /**
+     * Warm-up and streaming compiles are interrupted when nobody waits for them anymore, a score is checked every
+     * measure and every planned chord so they stop without parsing the rest of it.
+     */
+    private static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Compiling was interrupted");
+        }
+    }
+
+    public TempoMap getTempoMap() {
+        return tempoMap;
+    }
+
+    /**
+     * Actions without notes to play are rests, they are left out but still move the stream on.
+     */
+    private void addAction(GuitarAction action) {
+        if (!action.notesToPlay.isEmpty()) {
+            guitarActions.add(action);
+        }
+        if (actionStream != null) {
+            try {
+                if (!action.notesToPlay.isEmpty()) {
+                    actionStream.publish(action);
+                }
+                actionStream.compiledUntil(action.timeStamp + action.timeTillNextNote);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while handing over actions", e);
+            }
+        }
+    }
+
+    private void addChord() {
+        List<Note> chord = new ArrayList<>(notes);
+        chord.sort(NoteComparator.INSTANCE);
+        double beats = Double.MAX_VALUE;
+        for (Note note : chord) {
+            beats = Math.min(beats, 4 * note.getDuration());
+        }
+        beats = beats == Double.MAX_VALUE ? 0 : beats;
+        chords.add(new Chord(chord, currentBeat, beats));
+        currentBeat += beats;
+    }
+
+    private void compilePlannedChords() {
+        long planStartTime = System.currentTimeMillis();
+        int[][] noteValues = new int[chords.size()][];
+        long[] gaps = new long[chords.size()];
+        for (int i = 0; i < chords.size(); i++) {
+            Chord chord = chords.get(i);
+            noteValues[i] = chord.notes.stream().filter(n -> !n.isRest()).mapToInt(Note::getValue).toArray();
+            gaps[i] = tempoMap.toMillis(chord.beat + chord.beats) - tempoMap.toMillis(chord.beat);
+        }
+        short[][] strings = stringPlanner.plan(noteValues, gaps);
+        logger.info("Planned strings of {} chords in {}ms", chords.size(), System.currentTimeMillis() - planStartTime);
+
+        PlannedStringStrategy plannedStrings = new PlannedStringStrategy();
+        for (int i = 0; i < chords.size(); i++) {
+            checkInterrupted();
+            Chord chord = chords.get(i);
+            plannedStrings.setStrings(strings[i]);
+            GuitarAction action = guitarPlayer.calculateNotes(chord.notes, tempoMap.getTempo(chord.beat), guitarTuning, minStringGaps, lastAction, plannedStrings);
+            currentBeat = chord.beat;
+            setTime(action);
+            addAction(action);
+            lastAction = action;
+        }
+        chords.clear();
+    }
+
+    /**
+     * The strategies are tried on the note values only, just the chosen one is turned into an action.
+     */
     private GuitarAction getBestAction() {
-        GuitarAction bestAction = null;
+        long start = System.nanoTime();
+        notes.sort(NoteComparator.INSTANCE);
+        GuitarPlayer.getStringsTaken(lastAction, minStringGaps, stringsTaken);
+        float tempo = tempoMap.getTempo(currentBeat);
+        ChordMemo.Entry memo = chordMemo.get(notes, stringsTaken);
+        if (memo != null) {
+            memoStrings.setStrings(memo.strings, memo.strategy);
+            GuitarAction action = guitarPlayer.calculateNotes(notes, tempo, guitarTuning, minStringGaps, lastAction, memoStrings);
+            chordMemo.hit(System.nanoTime() - start);
+            return action;
+        }
+        int playableNotes = 0;
+        for (Note note : notes) {
+            if (!note.isRest()) {
+                playableNotes++;
+            }
+        }
+        StringStrategy bestStrategy = null;
+        int bestHitCount = -1;
         for (StringStrategy stringStrategy : stringStrategies) {
-            GuitarAction action = guitarPlayer.calculateNotes(notes, guitarTuning, lastAction, stringStrategy);
-            if (action.error == null) {
-                return action;
+            int hitCount = getHitCount(stringStrategy);
+            if (hitCount == playableNotes) {
+                bestStrategy = stringStrategy;
+                break;
             }
-            if (bestAction == null) {
-                bestAction = action;
-            } else if (getHitCount(bestAction) < getHitCount(action)) {
-                bestAction = action;
+            if (hitCount > bestHitCount) {
+                bestHitCount = hitCount;
+                bestStrategy = stringStrategy;
             }
         }
+        GuitarAction bestAction = guitarPlayer.calculateNotes(notes, tempo, guitarTuning, minStringGaps, lastAction, bestStrategy);
+        chordMemo.miss(bestAction, bestStrategy.getName(), System.nanoTime() - start);
         return bestAction;
     }
 
-    private static long getHitCount(GuitarAction action) {
-        return action.notesToPlay.stream().filter(GuitarNote::isHit).count();
+    /**
+     * @return the number of notes the strategy finds a string for, picked the way {@link GuitarNote} picks them
+     */
+    private int getHitCount(StringStrategy stringStrategy) {
+        System.arraycopy(stringsTaken, 0, candidateStringsTaken, 0, stringsTaken.length);
+        int hitCount = 0;
+        for (Note note : notes) {
+            if (note.isRest()) {
+                continue;
+            }
+            int noteValue = note.getValue();
+            int string = stringStrategy.getBestString(guitarTuning.getStringMask(noteValue), candidateStringsTaken, noteValue);
+            if (string >= 0) {
+                candidateStringsTaken[string] = noteValue;
+                hitCount++;
+            }
+        }
+        return hitCount;
+    }
+
+    ChordMemo getChordMemo() {
+        return chordMemo;
     }
 
     public List<GuitarAction> guitarActions() {
@@ -103,16 +286,31 @@ public class MusicXmlParserListener extends ParserListenerAdapter {
     public void onNoteParsed(Note note) {
         logger.debug("Parsing note {}", note);
         try {
-            if (!note.isHarmonicNote() && !notes.isEmpty()) {
-                final GuitarAction action = getBestAction();
-                action.timeStamp = currentTimestamp;
-                currentTimestamp += action.timeTillNextNote;
-                if (!action.notesToPlay.isEmpty()) {
-                    guitarActions.add(action);
-                }
-                lastAction = action;
-                notes.clear();
-            }
+            startChord(note.isHarmonicNote());
+            notes.add(note);
+        } catch (Exception e) {
+            logger.error("Failed to parse music xml", e);
+            throw e;
+        }
+    }
+
+    /**
+     * Same as {@link #onNoteParsed}, but the parser built no note. Greedy chords are dropped once compiled, so their
+     * notes come from a pool, planned chords are kept until the end and get notes of their own.
+     */
+    @Override
+    public void onNoteEvent(byte value, double duration, int flags) {
+        try {
+            boolean harmonic = (flags & CHORD) != 0;
+            startChord(harmonic);
+            Note note = stringPlanner != null ? new Note() : pooledNote(notes.size());
+            note.setValue(value);
+            note.setDuration(duration);
+            note.setRest((flags & REST) != 0);
+            note.setHarmonicNote(harmonic);
+            note.setFirstNote(!harmonic);
+            note.setStartOfTie((flags & TIE_START) != 0);
+            note.setEndOfTie((flags & TIE_END) != 0);
             notes.add(note);
         } catch (Exception e) {
             logger.error("Failed to parse music xml", e);
@@ -120,4 +318,28 @@ public class MusicXmlParserListener extends ParserListenerAdapter {
         }
     }
 
+    private Note pooledNote(int index) {
+        if (index == notePool.size()) {
+            notePool.add(new Note());
+        }
+        return notePool.get(index);
+    }
+
+    /**
+     * Compiles the notes collected so far when the next note doesn't sound together with them.
+     */
+    private void startChord(boolean harmonic) {
+        if (!harmonic && !notes.isEmpty() && stringPlanner != null) {
+            addChord();
+            notes.clear();
+        } else if (!harmonic && !notes.isEmpty()) {
+            final GuitarAction action = getBestAction();
+            setTime(action);
+            currentBeat += action.beats;
+            addAction(action);
+            lastAction = action;
+            notes.clear();
+        }
+    }
+
 }
@@ -0,0 +1,87 @@
+package nl.guitar.player;
+
+import nl.guitar.player.object.GuitarAction;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Bounded hand-over of compiled actions from the score compiler to the player, so playback can start before the
+ * whole score is compiled. When the player catches up the compiler blocks, when the compiler falls behind the
+ * player gets a timeout. Rests don't become actions, so the compiler also tells how far into the score it got.
+ */
+public class ActionStream {
+    public static final int DEFAULT_CAPACITY = 512;
+    private static final GuitarAction END = new GuitarAction();
+
+    private final BlockingQueue<GuitarAction> queue;
+    private volatile Exception failure;
+    private volatile long compiledUntil;
+
+    public ActionStream() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ActionStream(int capacity) {
+        queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public void publish(GuitarAction action) throws InterruptedException {
+        queue.put(action);
+    }
+
+    /**
+     * @param timeStamp ms into the score up to which everything is published, rests included
+     */
+    public void compiledUntil(long timeStamp) {
+        compiledUntil = timeStamp;
+    }
+
+    public long getCompiledUntil() {
+        return compiledUntil;
+    }
+
+    public void finish() throws InterruptedException {
+        queue.put(END);
+    }
+
+    /**
+     * Ends the stream because compiling failed, the player rethrows the failure once it reaches the end.
+     */
+    public void fail(Exception e) {
+        failure = e;
+        queue.clear();
+        queue.offer(END);
+    }
+
+    /**
+     * @return the next action, or null when the score is done
+     */
+    public GuitarAction take() throws InterruptedException {
+        return unwrap(queue.take());
+    }
+
+    /**
+     * @return the next action, or null when the score is done
+     * @throws TimeoutException when the compiler didn't deliver an action in time
+     */
+    public GuitarAction take(long timeoutMs) throws InterruptedException, TimeoutException {
+        GuitarAction action = queue.poll(Math.max(0, timeoutMs), TimeUnit.MILLISECONDS);
+        if (action == null) {
+            throw new TimeoutException("No action compiled within " + timeoutMs + "ms");
+        }
+        return unwrap(action);
+    }
+
+    private GuitarAction unwrap(GuitarAction action) {
+        if (action != END) {
+            return action;
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Compiling the score failed", failure);
+        }
+        return null;
+    }
+}
@@ -3,9 +3,14 @@ package nl.guitar.player;
 import io.quarkus.runtime.StartupEvent;
 import nl.guitar.StatusWebsocket;
 import nl.guitar.controlers.Controller;
+import nl.guitar.controlers.ShadowRegisterController;
+import nl.guitar.controlers.SimulationController;
 import nl.guitar.data.ConfigRepository;
 import nl.guitar.domain.FredConfig;
+import nl.guitar.domain.PlayabilityReport;
 import nl.guitar.domain.PlectrumConfig;
+import nl.guitar.domain.SchedulerStats;
+import nl.guitar.domain.SimulationReport;
 import nl.guitar.player.object.GuitarAction;
 import nl.guitar.player.object.GuitarNote;
 import nl.guitar.player.object.NoteComparator;
@@ -20,21 +25,31 @@ import javax.annotation.PostConstruct;
 import javax.enterprise.event.Observes;
 import javax.inject.Singleton;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.LongSummaryStatistics;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeoutException;
+
+import static nl.guitar.controlers.ShadowRegisterController.PORTS;
+import static nl.guitar.controlers.ShadowRegisterController.SERVOS;
+import static nl.guitar.controlers.ShadowRegisterController.servo;
 
 @Singleton
 public class GuitarPlayer implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(GuitarPlayer.class);
     public static final int PREPARE_TIME = 150;
+    public static final double MIN_SPEED = 0.25;
+    /**
+     * Above the tempo of the score the notes on a string come closer together, every song is further capped by
+     * {@link PreparePlanner#maxSpeed}.
+     */
+    public static final double MAX_SPEED = 2;
     protected final Controller controller;
     private final ConfigRepository configRepository;
-    private int notesBarsPlayed;
-    private float tempo = 60;
     private List<GuitarAction> lastPlayedActions;
 
     private List<PlectrumConfig> plectrumConfig;
@@ -72,7 +87,7 @@ public class GuitarPlayer implements AutoCloseable {
         this.resetFreds();
     }
 
-    public GuitarAction calculateNotes(List<Note> notes, GuitarTuning guitarTuning, GuitarAction lastAction, StringStrategy stringStrategy) {
+    public GuitarAction calculateNotes(List<Note> notes, float tempo, GuitarTuning guitarTuning, long[] minStringGaps, GuitarAction lastAction, StringStrategy stringStrategy) {
         GuitarAction action = new GuitarAction();
         if (lastAction == null) {
             action.instructionNumber = 0;
@@ -81,37 +96,39 @@ public class GuitarPlayer implements AutoCloseable {
         }
         try {
             notes.sort(NoteComparator.INSTANCE);
-            notesBarsPlayed++;
             long shortestNote = Long.MAX_VALUE;
+            double shortestBeats = Double.MAX_VALUE;
             List<GuitarNote> notesToPlay = new ArrayList<>(notes.size());
-            int[] stringsTaken = new int[] {-1, -1, -1 ,-1, -1, -1};
-            if (lastAction != null && lastAction.timeTillNextNote < PREPARE_TIME) {
-                lastAction.notesToPlay.stream().filter(GuitarNote::isHit).forEach(n -> stringsTaken[n.getStringNumber()] = n.getNoteValue());
-            }
+            int[] stringsTaken = getStringsTaken(lastAction, minStringGaps);
             for (Note note : notes) {
                 if (!note.isRest()) {
                     GuitarNote gn = new GuitarNote(note, guitarTuning, stringsTaken, note.getDuration(), stringStrategy);
                     notesToPlay.add(gn);
                     if (gn.getStringNumber() == -1) {
-                        action.error = "[" + stringStrategy.getClass().getSimpleName() +"] Unable to play @" + action.instructionNumber + " note value " + note.getValue() + ' ' + note;
+                        action.error = "[" + stringStrategy.getName() +"] Unable to play @" + action.instructionNumber + " note value " + note.getValue() + ' ' + Note.getToneString(note.getValue());
                         logger.warn(action.error);
                     } else {
                         stringsTaken[gn.getStringNumber()] = gn.getNoteValue();
                     }
-                    logger.debug("Duration = {}", note.getDuration());
-                    //logger.debug("har " + note.isHarmonicNote());
-                    //logger.debug("mel " + note.isMelodicNote());
                 }
                 long timeout = (long) (60f / tempo * 4f * note.getDuration() * 1000);
                 if (timeout < shortestNote) {
                     shortestNote = timeout;
                 }
+                shortestBeats = Math.min(shortestBeats, 4 * note.getDuration());
             }
             action.timeTillNextNote = shortestNote;
+            action.beats = shortestBeats == Double.MAX_VALUE ? 0 : shortestBeats;
 
-            List<Short> distinctStrings = notesToPlay.stream().map(GuitarNote::getStringNumber).filter(s -> s >= 0).distinct().collect(Collectors.toList());
-            if (notesToPlay.size() > distinctStrings.size()) {
-                logger.debug("Want to play a sting multiple times on note: " + notesBarsPlayed + " on string " + distinctStrings + " time since last note:" + (lastAction != null ? lastAction.timeTillNextNote : -10));
+            int usedStrings = 0;
+            for (GuitarNote gn : notesToPlay) {
+                if (gn.getStringNumber() >= 0) {
+                    usedStrings |= 1 << gn.getStringNumber();
+                }
+            }
+            if (notesToPlay.size() > Integer.bitCount(usedStrings) && logger.isDebugEnabled()) {
+                logger.debug("Want to play a sting multiple times on note: {} on strings {} time since last note: {}", action.instructionNumber,
+                        Integer.toBinaryString(usedStrings), lastAction != null ? lastAction.timeTillNextNote : -10);
             }
 
             action.notesToPlay = notesToPlay;
@@ -122,174 +139,400 @@ public class GuitarPlayer implements AutoCloseable {
         return action;
     }
 
-    public void printStats(List<GuitarAction> actions) {
-        logger.info("Number statistics:");
-        if (actions.isEmpty()) {
-            logger.info("  No actions!");
-            return;
+    /**
+     * @return ms between two hits on every string below which the string counts as taken, for the current config
+     */
+    public long[] loadMinStringGaps() {
+        return PreparePlanner.minStringGaps(configRepository.loadPlectrumConfig(), configRepository.loadFredConfig());
+    }
+
+    /**
+     * @param minStringGaps see {@link #loadMinStringGaps()}
+     * @return the note value still sounding on every string after the last action, -1 for the strings that are free
+     */
+    public static int[] getStringsTaken(GuitarAction lastAction, long[] minStringGaps) {
+        return getStringsTaken(lastAction, minStringGaps, new int[6]);
+    }
+
+    /**
+     * Fills the given array instead of allocating one.
+     */
+    public static int[] getStringsTaken(GuitarAction lastAction, long[] minStringGaps, int[] stringsTaken) {
+        Arrays.fill(stringsTaken, -1);
+        if (lastAction != null) {
+            for (GuitarNote note : lastAction.notesToPlay) {
+                int string = note.getStringNumber();
+                if (note.isHit() && string >= 0 && lastAction.timeTillNextNote < minStringGaps[string]) {
+                    stringsTaken[string] = note.getNoteValue();
+                }
+            }
         }
-        LongSummaryStatistics durationStats = actions.stream()
-                .map((GuitarAction a) -> a.timeTillNextNote)
-                .collect(LongSummaryStatistics::new,
-                        LongSummaryStatistics::accept,
-                        LongSummaryStatistics::combine);
-        final List<Integer> notes = actions.stream()
-                .flatMap((GuitarAction a) -> a.notesToPlay.stream()
-                        .map(GuitarNote::getNoteValue)
-                ).filter(i -> i > 0)
-                .collect(Collectors.toList());
-        String lowestNote = notes.stream()
-                .min(Integer::compare)
-                .toString();
-        String highestNote = notes.stream()
-                .max(Integer::compare)
-                .toString();
-        logger.info("  Errors: {}", actions.stream().filter(a -> a.error != null).count());
-        actions.stream().filter(a -> a.error != null).forEach(a -> logger.info("   - Error @{}: {}", a.instructionNumber, a.error));
-        logger.info("  Shortest note {}ms", durationStats.getMin());
-        logger.info("  Average note {}ms", durationStats.getAverage());
-        logger.info("  Lowest note {}", lowestNote);
-        logger.info("  Highest note {}", highestNote);
-    }
-
-    private void playNotes(List<GuitarNote> notesToPlay, long timeStampWhenNoteShouldSound){
-        notesBarsPlayed++;
-        notesToPlay.forEach(this::prepareStringPressFredAndMovePlectrumToHigh);
-        controller.waitMilliseconds(PREPARE_TIME /3);
-        notesToPlay.forEach(this::prepareStringMovePlectrumToUp);
-        controller.waitMilliseconds(PREPARE_TIME /3);
-        notesToPlay.forEach(this::prepareStringMovePlectrumToHitPosition);
-
-        controller.waitUntilTimestamp(timeStampWhenNoteShouldSound);
-
-        logger.info("Playing notes [{}]: @{}: {}", notesToPlay.size(), timeStampWhenNoteShouldSound, notesToPlay);
-        notesToPlay.forEach(this::playString);
-    }
-
-    private ThreadPoolExecutor executorService = null;
-
-    public void playActions(List<GuitarAction> guitarActions) {
-        executorService = new ThreadPoolExecutor(4, 4,60L, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<>());
+        return stringsTaken;
+    }
+
+    /**
+     * Checks a plan against the current config without playing it, and plays it on a {@link SimulationController}
+     * for the timing violations. Both use the same compiled timeline.
+     */
+    public PlayabilityReport analyze(List<GuitarAction> actions) {
+        // checks run next to a playing song, which keeps the config it started with
+        List<PlectrumConfig> plectrumConfig = configRepository.loadPlectrumConfig();
+        List<List<FredConfig>> fredConfig = configRepository.loadFredConfig();
+        long[] fredCount = countFreds(fredConfig);
+        ServoTimeline timeline = TimelineCompiler.compile(actions, plectrumConfig, fredConfig, fredCount);
+        PlayabilityReport report = new PlayabilityAnalyzer(plectrumConfig, fredConfig, fredCount).analyze(actions, timeline);
+        report.simulation = simulate(timeline, plectrumConfig, fredConfig, 1);
+        return report;
+    }
+
+    /**
+     * Plays a plan on a {@link SimulationController} instead of the guitar, nothing is sent to the websocket.
+     */
+    public SimulationReport simulate(List<GuitarAction> actions) {
+        return simulate(actions, 1);
+    }
+
+    /**
+     * @param speed see {@link #setSpeed(double)}
+     */
+    SimulationReport simulate(List<GuitarAction> actions, double speed) {
+        List<PlectrumConfig> plectrumConfig = configRepository.loadPlectrumConfig();
+        List<List<FredConfig>> fredConfig = configRepository.loadFredConfig();
+        ServoTimeline timeline = TimelineCompiler.compile(actions, plectrumConfig, fredConfig, countFreds(fredConfig));
+        return simulate(timeline, plectrumConfig, fredConfig, speed);
+    }
+
+    private static SimulationReport simulate(ServoTimeline timeline, List<PlectrumConfig> plectrumConfig,
+                                             List<List<FredConfig>> fredConfig, double speed) {
+        SimulationController simulation = new SimulationController(plectrumConfig, fredConfig);
+        simulation.start(PREPARE_TIME);
+        new PlaybackScheduler(simulation, timeline, instructionNumber -> { }, speed).play();
+        return simulation.getReport();
+    }
+
+    private PlaybackScheduler scheduler;
+    private volatile double speed = 1;
+    private volatile double maxSongSpeed = MAX_SPEED;
+    private TimelineCompiler timelineCompiler;
+    private volatile boolean stopRequested;
+    // after a stop the frets stay pressed for a resume, until the guitar stood still for a while
+    private final ScheduledExecutorService fredReleaser = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "fred-releaser");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Object fredReleaseLock = new Object();
+    private ScheduledFuture<?> fredRelease;
+
+    public boolean playActions(List<GuitarAction> guitarActions) {
+        return playFrom(guitarActions, 0);
+    }
+
+    /**
+     * Plays the actions from startIndex on. The frets and plectrums are first put in the state the actions before
+     * it leave them in, moving only the servos that are not there yet.
+     *
+     * @return false when playing was stopped before the end
+     */
+    public boolean playFrom(List<GuitarAction> guitarActions, int startIndex) {
+        cancelFredRelease();
+        stopRequested = false;
         reloadConfig();
-        this.lastPlayedActions = new ArrayList<>(guitarActions);
-        initStrings();
-        StatusWebsocket.sendToAll("start");
-        controller.start(PREPARE_TIME + 500);
-        for (GuitarAction action : guitarActions) {
-            executorService.execute(() -> {
-                    controller.waitUntilTimestamp(action.timeStamp - PREPARE_TIME);
-                playNotes(action.notesToPlay, action.timeStamp);
-                StatusWebsocket.sendToAll("next");
-            });
+        limitSpeed(PreparePlanner.maxSpeed(guitarActions.subList(startIndex, guitarActions.size()),
+                PreparePlanner.minStringGaps(plectrumConfig, fredConfig)));
+        this.lastPlayedActions = new ArrayList<>(guitarActions.size() - startIndex);
+        moveToStateAt(guitarActions, startIndex);
+        preparePlaying((guitarActions.size() - startIndex) * 8);
+        if (startIndex < guitarActions.size()) {
+            scheduler.startAt(guitarActions.get(startIndex).timeStamp);
         }
-        try {
-            executorService.shutdown();
-            executorService.awaitTermination(10, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            logger.error("Failed waiting for termination of thread pool", e);
+        for (int i = startIndex; i < guitarActions.size(); i++) {
+            schedule(guitarActions.get(i));
         }
-        StatusWebsocket.sendToAll("stop");
+        timelineCompiler.finish();
+        startPlaying();
+        finishPlaying();
+        return !stopRequested;
     }
 
-    private void initStrings() {
-        reloadConfig();
+    /**
+     * Replays the actions before startIndex on a scratch timeline to find where every servo should be, then only
+     * moves the ones the controller doesn't already have there.
+     */
+    private void moveToStateAt(List<GuitarAction> guitarActions, int startIndex) {
+        long startTime = System.currentTimeMillis();
+        int[] pressed = new int[fredPressed.length];
+        boolean[] up = isStringUp.clone();
+        ServoTimeline history = new ServoTimeline(startIndex * 8);
+        TimelineCompiler compiler = new TimelineCompiler(history, plectrumConfig, fredConfig, fredCount, pressed, up);
+        for (int i = 0; i < startIndex; i++) {
+            compiler.append(guitarActions.get(i));
+        }
+        compiler.finish();
+
+        float[] target = new float[SERVOS];
+        Arrays.fill(target, Float.NaN);
         for (int i = 0; i < 6; i++) {
+            List<FredConfig> configs = fredConfig.get(i);
+            for (int j = 0; j < configs.size(); j += 2) {
+                if (configs.get(j).port > -1) {
+                    setTarget(target, configs.get(j).address, configs.get(j).port, configs.get(j).free);
+                }
+            }
             PlectrumConfig config = plectrumConfig.get(i);
-            controller.setServoPulse(config.adressHeight, config.portHeight, config.soft);
+            setTarget(target, config.adressHeight, config.portHeight, config.soft);
+        }
+        for (int i = 0; i < history.size(); i++) {
+            if (history.board(i) != ServoTimeline.ACTION_PLAYED) {
+                setTarget(target, history.board(i), history.port(i), history.pulse(i));
+            }
         }
-        controller.waitMilliseconds(PREPARE_TIME);
+
+        int servos = 0;
+        int moved = 0;
+        for (int servo = 0; servo < SERVOS; servo++) {
+            if (Float.isNaN(target[servo])) {
+                continue;
+            }
+            servos++;
+            int board = servo / PORTS;
+            short port = (short) (servo % PORTS);
+            if (controller.getServoPulse(board, port) != target[servo]) {
+                controller.setServoPulse(board, port, target[servo]);
+                moved++;
+            }
+        }
+        System.arraycopy(pressed, 0, fredPressed, 0, pressed.length);
+        System.arraycopy(up, 0, isStringUp, 0, up.length);
+        if (moved > 0) {
+            controller.waitMilliseconds(PREPARE_TIME);
+        }
+        logger.info("Moved {} of {} servos to the state at action {} in {}ms", moved, servos, startIndex,
+                System.currentTimeMillis() - startTime);
     }
 
-    public List<GuitarAction> getLastPlayedActions() {
-        return lastPlayedActions;
+    private static void setTarget(float[] target, int board, short port, float pulse) {
+        int servo = servo(board, port);
+        if (servo >= 0) {
+            target[servo] = pulse;
+        }
     }
 
-    public void setTempo(int tempo) {
-        logger.info("Tempo changed to = " + tempo);
-        this.tempo = tempo;
+    /**
+     * Plays actions while they are still being compiled. Playback starts once the actions of the first
+     * lookAheadTime ms are compiled, after that every action has to arrive before its prepare time.
+     *
+     * @throws PlaybackUnderrunException when the compiler falls behind the playback
+     */
+    public boolean playStream(ActionStream actionStream, long lookAheadTime) throws InterruptedException {
+        cancelFredRelease();
+        stopRequested = false;
+        reloadConfig();
+        // the actions that are still to come can't be checked for their string gaps
+        limitSpeed(1);
+        this.lastPlayedActions = new ArrayList<>();
+        moveToStateAt(Collections.emptyList(), 0);
+        preparePlaying(ServoTimeline.DEFAULT_CAPACITY);
+        List<GuitarAction> window = new ArrayList<>();
+        GuitarAction action;
+        boolean finished = false;
+        while (true) {
+            action = actionStream.take();
+            if (action == null) {
+                finished = true;
+                break;
+            }
+            window.add(action);
+            if (action.timeStamp >= lookAheadTime) {
+                break;
+            }
+        }
+        logger.info("Start playing with {} actions compiled", window.size());
+        GuitarAction last = null;
+        for (GuitarAction a : window) {
+            schedule(a);
+            last = a;
+        }
+        startPlaying();
+        try {
+            while (!finished && !stopRequested) {
+                // after a rest the next action is due later than the last one ends
+                long deadline = Math.max(last.timeStamp + last.timeTillNextNote, actionStream.getCompiledUntil()) - PREPARE_TIME;
+                long timeLeft = scheduler.millisUntil(deadline);
+                if (timeLeft == Controller.NO_CLOCK) {
+                    action = actionStream.take();
+                } else {
+                    try {
+                        action = actionStream.take(timeLeft);
+                    } catch (TimeoutException e) {
+                        if (actionStream.getCompiledUntil() - PREPARE_TIME > deadline) {
+                            // a rest was compiled while waiting
+                            continue;
+                        }
+                        throw new PlaybackUnderrunException(last.instructionNumber + 1, deadline + PREPARE_TIME);
+                    }
+                }
+                if (action == null) {
+                    finished = true;
+                } else {
+                    schedule(action);
+                    last = action;
+                }
+            }
+        } catch (RuntimeException e) {
+            scheduler.cancel();
+            throw e;
+        } finally {
+            finishPlaying();
+        }
+        return !stopRequested;
     }
 
-    public void stop() {
-        executorService.shutdownNow();
+    private void preparePlaying(int capacity) {
+        ServoTimeline timeline = new ServoTimeline(capacity);
+        timelineCompiler = new TimelineCompiler(timeline, plectrumConfig, fredConfig, fredCount, fredPressed, isStringUp);
+        scheduler = new PlaybackScheduler(controller, timeline, instructionNumber -> StatusWebsocket.sendToAll("next"), speed);
     }
 
-    void prepareStringPressFredAndMovePlectrumToHigh(GuitarNote gn) {
-        if (gn.getStringNumber() == -1 && gn.getNoteValue() > 0) {
-            logger.debug("Not a correct string for {}", gn);
-            return;
-        }
-        int stringNumber = gn.getStringNumber();
-        int fredNumber = gn.getFred();
+    private void startPlaying() {
+        StatusWebsocket.sendToAll("start");
+        controller.start(PREPARE_TIME + 500);
+        scheduler.start();
+    }
 
-        if (fredPressed[stringNumber] != fredNumber) {
-            if (fredPressed[stringNumber] > 0) {
-                resetFred(stringNumber);
-            }
-            fredPressed[stringNumber] = fredNumber;
-            if (fredNumber > 0) {
-                logger.trace("Press fred {}", fredNumber);
-                FredConfig fc = fredConfig.get(stringNumber).get(fredNumber - 1);
-                controller.setServoPulse(fc.address, fc.port, fc.push);
-            }
+    private void schedule(GuitarAction action) {
+        if (stopRequested) {
+            return;
         }
-        PlectrumConfig stringConfig = plectrumConfig.get(stringNumber);
-        controller.setServoPulse(stringConfig.adressHeight, stringConfig.portHeight, stringConfig.free);
+        lastPlayedActions.add(action);
+        timelineCompiler.append(action);
+        scheduler.wakeUp();
     }
 
-    void prepareStringMovePlectrumToUp(GuitarNote gn) {
-        final int stringNumber = gn.getStringNumber();
-        if (gn.getStringNumber() == -1 || !gn.isHit()) {
-            return;
+    private void finishPlaying() {
+        timelineCompiler.finish();
+        try {
+            scheduler.finish();
+        } catch (InterruptedException e) {
+            logger.error("Failed waiting for the playback scheduler", e);
+            scheduler.cancel();
         }
+        maxSongSpeed = MAX_SPEED;
+        SchedulerStats stats = scheduler.getStats();
+        logger.info("Playback done: {}", stats);
+        StatusWebsocket.sendToAll("stop");
+        StatusWebsocket.sendToAll("metrics", stats);
+    }
 
-        PlectrumConfig stringConfig = plectrumConfig.get(stringNumber);
+    public List<GuitarAction> getLastPlayedActions() {
+        return lastPlayedActions;
+    }
 
-        controller.setServoPulse(stringConfig.adressPlectrum, stringConfig.portPlectrum, stringConfig.up);
-        isStringUp[stringNumber] = true;
+    /**
+     * @return the instruction number of the last action that sounded, -1 when nothing was played yet
+     */
+    public int getLastPlayedInstruction() {
+        PlaybackScheduler current = scheduler;
+        return current == null ? -1 : current.getLastPlayedInstruction();
     }
 
-    void prepareStringMovePlectrumToHitPosition(GuitarNote gn) {
-        final int stringNumber = gn.getStringNumber();
-        if (stringNumber == -1 || !gn.isHit()) {
-            return;
+    private void limitSpeed(double maxSpeed) {
+        maxSongSpeed = maxSpeed;
+        if (speed > maxSpeed) {
+            logger.warn("Playing at speed {} instead of {}, the string gaps of the song don't allow faster", maxSpeed, speed);
+            speed = maxSpeed;
         }
-        PlectrumConfig stringConfig = plectrumConfig.get(stringNumber);
+    }
 
-        float heightDistance = stringConfig.hard - stringConfig.soft;
-        float height = stringConfig.soft;
-        if (fredPressed[stringNumber] > 1) {
-            height = stringConfig.soft + (heightDistance / fredCount[stringNumber] * (fredPressed[stringNumber] -1));
+    /**
+     * Plays slower or faster than the score without recompiling, also changes the song that is playing right now.
+     *
+     * @param speed 1 for the tempo of the score, 0.5 for half speed
+     * @throws IllegalArgumentException when the speed is out of range, or too fast for the string gaps of the song
+     *                                  that is playing
+     */
+    public void setSpeed(double speed) {
+        if (speed < MIN_SPEED || speed > MAX_SPEED) {
+            throw new IllegalArgumentException("Speed " + speed + " is not between " + MIN_SPEED + " and " + MAX_SPEED);
+        }
+        double maxSpeed = maxSongSpeed;
+        if (speed > maxSpeed) {
+            throw new IllegalArgumentException("Speed " + speed + " is above " + maxSpeed + ", the string gaps of the song don't allow faster");
         }
-        controller.setServoPulse(stringConfig.adressHeight, stringConfig.portHeight, height);
+        this.speed = speed;
+        PlaybackScheduler current = scheduler;
+        if (current != null) {
+            current.setSpeed(speed);
+        }
+        logger.info("Playback speed set to {}", speed);
     }
 
-    void playString(GuitarNote gn) {
-        if (gn.getStringNumber() == -1 || !gn.isHit()) {
-            return;
-        }
-        float toPos;
-        PlectrumConfig stringConfig = plectrumConfig.get(gn.getStringNumber());
-        if (isStringUp[gn.getStringNumber()]) {
-            toPos = stringConfig.down;
-            isStringUp[gn.getStringNumber()] = false;
-        } else {
-            toPos = stringConfig.up;
-            isStringUp[gn.getStringNumber()] = true;
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @return how late the commands of the current or last song were sent, null when nothing was played yet
+     */
+    public SchedulerStats getPlaybackStats() {
+        PlaybackScheduler current = scheduler;
+        return current == null ? null : current.getStats();
+    }
+
+    public void stop() {
+        stopRequested = true;
+        PlaybackScheduler current = scheduler;
+        if (current != null) {
+            current.cancel();
         }
-        controller.setServoPulse(stringConfig.adressPlectrum, stringConfig.portPlectrum, toPos);
     }
 
     public void resetFreds() {
         logger.debug("Resetting freds");
         for (int i = 0; i < 6; i++) {
             resetFred(i);
+            fredPressed[i] = 0;
             controller.waitMilliseconds(350);
         }
         controller.waitMilliseconds(100);
         logger.debug("Resetting freds ready");
     }
 
+    /**
+     * Releases the frets a stopped song left pressed once nothing was played for the delay. Resuming before that
+     * carries on without moving them, after it the seek presses them again.
+     */
+    public void releaseFredsAfter(long delayMs) {
+        synchronized (fredReleaseLock) {
+            cancelFredRelease();
+            fredRelease = fredReleaser.schedule(this::releaseIdleFreds, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void releaseIdleFreds() {
+        synchronized (fredReleaseLock) {
+            // a release that was cancelled or replaced while this one waited for the lock
+            if (fredRelease == null || fredRelease.getDelay(TimeUnit.MILLISECONDS) > 0) {
+                return;
+            }
+            fredRelease = null;
+            logger.info("Releasing the frets of the stopped song");
+            resetFreds();
+        }
+    }
+
+    /**
+     * Waits for a release that already started, so it doesn't move the frets under a new song.
+     */
+    private void cancelFredRelease() {
+        synchronized (fredReleaseLock) {
+            if (fredRelease != null) {
+                fredRelease.cancel(false);
+                fredRelease = null;
+            }
+        }
+    }
+
     private void resetFred(int stringNumber) {
         for (int i = 0; i < fredConfig.get(stringNumber).size(); i += 2) {
             FredConfig fc = fredConfig.get(stringNumber).get(i);
@@ -303,14 +546,28 @@ public class GuitarPlayer implements AutoCloseable {
     private void reloadConfig() {
         plectrumConfig = configRepository.loadPlectrumConfig();
         fredConfig = configRepository.loadFredConfig();
+        // the timeline compiler of the song holds on to this array
+        System.arraycopy(countFreds(fredConfig), 0, fredCount, 0, fredCount.length);
+    }
+
+    private static long[] countFreds(List<List<FredConfig>> fredConfig) {
+        long[] count = new long[6];
+        for (int i = 0; i < 6; i++) {
+            count[i] = fredConfig.get(i).stream().filter(f -> f.port > -1).count();
+        }
+        return count;
     }
 
     @Override
     public void close() throws InterruptedException {
+        cancelFredRelease();
         logger.debug("Reset servo positions");
+        if (controller instanceof ShadowRegisterController) {
+            // servos may have been moved by hand, so write every position again
+            ((ShadowRegisterController) controller).forget();
+        }
         reloadConfig();
         for (int i = 0; i < 6; i++) {
-            fredCount[i] = fredConfig.get(i).stream().filter(f -> f.port > -1).count();
             List<FredConfig> configs = fredConfig.get(i);
             for (int j = 0; j < configs.size(); j += 2) {
                 FredConfig fredConfig = configs.get(j);
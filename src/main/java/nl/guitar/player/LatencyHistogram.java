@@ -0,0 +1,97 @@
+package nl.guitar.player;
+
+import nl.guitar.domain.LatencyStats;
+
+/**
+ * Fixed size histogram of latencies in µs. Values below 64µs get their own bucket, above that every power of two
+ * is split in 32 buckets, so a percentile is at most about 3% off. Recording allocates nothing. The timing thread
+ * records while the REST calls and the websocket read, so both take the lock of the histogram, which the timing
+ * thread has to itself nearly all the time.
+ */
+final class LatencyHistogram {
+    private static final int LINEAR_BUCKETS = 64;
+    private static final int SUB_BUCKETS = 32;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int FIRST_EXPONENT = 6;
+    private static final int LAST_EXPONENT = 40;
+    private static final int BUCKETS = LINEAR_BUCKETS + (LAST_EXPONENT - FIRST_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long total;
+    private long max;
+    private long early;
+
+    /**
+     * @param latency µs after the planned time, negative values are counted as early and recorded as 0
+     */
+    synchronized void record(long latency) {
+        if (latency < 0) {
+            early++;
+            latency = 0;
+        }
+        counts[bucket(latency)]++;
+        count++;
+        total += latency;
+        if (latency > max) {
+            max = latency;
+        }
+    }
+
+    synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the smallest recorded bucket value that at least the given fraction of the latencies stays under
+     */
+    synchronized long percentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= wanted) {
+                return Math.min(max, upperBound(i));
+            }
+        }
+        return max;
+    }
+
+    synchronized LatencyStats getStats() {
+        LatencyStats stats = new LatencyStats();
+        stats.count = count;
+        stats.early = early;
+        stats.mean = count == 0 ? 0 : total / count;
+        stats.p50 = percentile(0.5);
+        stats.p90 = percentile(0.9);
+        stats.p99 = percentile(0.99);
+        stats.p999 = percentile(0.999);
+        stats.max = max;
+        return stats;
+    }
+
+    static int bucket(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > LAST_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + FIRST_EXPONENT;
+        long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+}
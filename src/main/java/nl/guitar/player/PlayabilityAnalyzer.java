@@ -0,0 +1,148 @@
+package nl.guitar.player;
+
+import nl.guitar.controlers.ShadowRegisterController;
+import nl.guitar.domain.FredConfig;
+import nl.guitar.domain.PlayabilityReport;
+import nl.guitar.domain.PlectrumConfig;
+import nl.guitar.player.object.GuitarAction;
+import nl.guitar.player.object.GuitarNote;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static nl.guitar.controlers.ShadowRegisterController.SERVOS;
+import static nl.guitar.controlers.ShadowRegisterController.servo;
+
+/**
+ * Checks a plan against the robot without playing it. The plan is first compiled into a servo timeline, then the
+ * actions are walked for the notes and string gaps and, separately, the timeline for the servo and board load.
+ * Rates are counted per whole second of the score.
+ */
+final class PlayabilityAnalyzer {
+    private final List<PlectrumConfig> plectrumConfig;
+    private final List<List<FredConfig>> fredConfig;
+    private final long[] fredCount;
+
+    PlayabilityAnalyzer(List<PlectrumConfig> plectrumConfig, List<List<FredConfig>> fredConfig, long[] fredCount) {
+        this.plectrumConfig = plectrumConfig;
+        this.fredConfig = fredConfig;
+        this.fredCount = fredCount;
+    }
+
+    PlayabilityReport analyze(List<GuitarAction> actions) {
+        return analyze(actions, TimelineCompiler.compile(actions, plectrumConfig, fredConfig, fredCount));
+    }
+
+    /**
+     * @param timeline the actions compiled from the rest state, as {@link TimelineCompiler#compile} does
+     */
+    PlayabilityReport analyze(List<GuitarAction> actions, ServoTimeline timeline) {
+        PlayabilityReport report = new PlayabilityReport();
+        report.actions = actions.size();
+        long[] lastHit = new long[6];
+        long[] minGap = new long[6];
+        Arrays.fill(lastHit, Long.MIN_VALUE);
+        Arrays.fill(minGap, -1);
+        int lowest = Integer.MAX_VALUE;
+        int highest = Integer.MIN_VALUE;
+        long shortest = Long.MAX_VALUE;
+        for (GuitarAction action : actions) {
+            if (action.error != null) {
+                report.errors++;
+                report.errorMessages.add("@" + action.instructionNumber + ": " + action.error);
+            }
+            shortest = Math.min(shortest, action.timeTillNextNote);
+            report.durationMs = Math.max(report.durationMs, action.timeStamp + action.timeTillNextNote);
+            for (GuitarNote note : action.notesToPlay) {
+                if (note.getNoteValue() > 0) {
+                    lowest = Math.min(lowest, note.getNoteValue());
+                    highest = Math.max(highest, note.getNoteValue());
+                }
+                int string = note.getStringNumber();
+                if (string < 0 || !note.isHit()) {
+                    continue;
+                }
+                if (lastHit[string] != Long.MIN_VALUE) {
+                    long gap = action.timeStamp - lastHit[string];
+                    if (minGap[string] < 0 || gap < minGap[string]) {
+                        minGap[string] = gap;
+                    }
+                }
+                lastHit[string] = action.timeStamp;
+            }
+        }
+
+        report.lowestNote = lowest == Integer.MAX_VALUE ? null : lowest;
+        report.highestNote = highest == Integer.MIN_VALUE ? null : highest;
+        report.shortestNoteMs = shortest == Long.MAX_VALUE ? 0 : shortest;
+        report.minStringGapMs = minGap;
+        report.neededStringGapMs = PreparePlanner.minStringGaps(plectrumConfig, fredConfig);
+        analyzeServos(timeline, report);
+
+        boolean playable = report.errors == 0;
+        for (int string = 0; string < 6; string++) {
+            playable &= minGap[string] < 0 || minGap[string] >= report.neededStringGapMs[string];
+        }
+        report.playable = playable;
+        return report;
+    }
+
+    private void analyzeServos(ServoTimeline timeline, PlayabilityReport report) {
+        boolean[] fretServo = new boolean[SERVOS];
+        // the timeline starts from the rest state, every fret released
+        float[] fretPulse = new float[SERVOS];
+        for (List<FredConfig> configs : fredConfig) {
+            for (FredConfig config : configs) {
+                int servo = servo(config.address, config.port);
+                if (servo >= 0) {
+                    fretServo[servo] = true;
+                    fretPulse[servo] = config.free;
+                }
+            }
+        }
+        long[] servoSecond = new long[SERVOS];
+        int[] servoCount = new int[SERVOS];
+        long[] boardSecond = new long[ShadowRegisterController.BOARDS];
+        int[] boardCount = new int[ShadowRegisterController.BOARDS];
+        int[] boardPeak = new int[ShadowRegisterController.BOARDS];
+        long[] boardWrites = new long[ShadowRegisterController.BOARDS];
+
+        for (int i = 0; i < timeline.size(); i++) {
+            int board = timeline.board(i);
+            // the action markers are outside the boards
+            int servo = servo(board, timeline.port(i));
+            if (servo < 0) {
+                continue;
+            }
+            long second = Math.floorDiv(timeline.time(i), 1000);
+            // writing the pulse a fret servo already has doesn't change the fret
+            if (fretServo[servo] && timeline.pulse(i) != fretPulse[servo]) {
+                fretPulse[servo] = timeline.pulse(i);
+                if (servoSecond[servo] != second || servoCount[servo] == 0) {
+                    servoSecond[servo] = second;
+                    servoCount[servo] = 0;
+                }
+                servoCount[servo]++;
+                if (servoCount[servo] > report.maxFretChangesPerSecond) {
+                    report.maxFretChangesPerSecond = servoCount[servo];
+                    report.busiestFretServoBoard = board;
+                    report.busiestFretServoPort = timeline.port(i);
+                }
+            }
+            if (boardSecond[board] != second || boardCount[board] == 0) {
+                boardSecond[board] = second;
+                boardCount[board] = 0;
+            }
+            boardCount[board]++;
+            boardPeak[board] = Math.max(boardPeak[board], boardCount[board]);
+            boardWrites[board]++;
+        }
+        for (int board = 0; board < boardWrites.length; board++) {
+            if (boardWrites[board] > report.busiestBoardWrites) {
+                report.busiestBoard = board;
+                report.busiestBoardWrites = boardWrites[board];
+                report.busiestBoardPeakPerSecond = boardPeak[board];
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package nl.guitar.player;
+
+import nl.guitar.controlers.Controller;
+import nl.guitar.domain.SchedulerStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+
+/**
+ * Plays a {@link ServoTimeline} on a single timing thread. The thread waits on the controller clock until the
+ * next command is due, or parks until the compiler appended more. Walking the timeline allocates nothing.
+ *
+ * Timeline times are score times, the speed maps them onto the controller clock. Prepare moves keep their lead
+ * before the hit in controller time, the servos need it whatever the speed. Changing the speed while playing
+ * re-anchors the mapping at the current moment, so only the part that is still to come gets faster or slower.
+ */
+final class PlaybackScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(PlaybackScheduler.class);
+
+    static final long LATE_THRESHOLD_MICROS = 5000;
+    private static final int WINDOW = 1024;
+
+    private final Controller controller;
+    private final ServoTimeline timeline;
+    private final IntConsumer actionPlayed;
+    private final Thread thread;
+    private volatile boolean cancelled;
+    private volatile boolean playing;
+    private volatile Speed speed;
+    private volatile int lastPlayedInstruction = -1;
+
+    private final LatencyHistogram prepareLatency = new LatencyHistogram();
+    private final LatencyHistogram hitLatency = new LatencyHistogram();
+    // entries after the walk position that were already due and played, only the timing thread uses it
+    private final boolean[] dispatchedAhead = new boolean[WINDOW];
+    // only the timing thread writes these
+    private volatile long dispatched;
+    private volatile long late;
+
+    /**
+     * Score time in µs at a controller time in µs. Immutable, so the timing thread reads it without locking.
+     */
+    private static final class Speed {
+        final double factor;
+        final long clockMicros;
+        final long scoreMicros;
+
+        Speed(double factor, long clockMicros, long scoreMicros) {
+            this.factor = factor;
+            this.clockMicros = clockMicros;
+            this.scoreMicros = scoreMicros;
+        }
+
+        long toClock(long score) {
+            return clockMicros + (long) ((score - scoreMicros) / factor);
+        }
+
+        long toScore(long clock) {
+            return scoreMicros + (long) ((clock - clockMicros) * factor);
+        }
+    }
+
+    PlaybackScheduler(Controller controller, ServoTimeline timeline, IntConsumer actionPlayed) {
+        this(controller, timeline, actionPlayed, 1);
+    }
+
+    /**
+     * @param actionPlayed called with the instruction number of every action when its notes sounded
+     * @param speed        1 plays the timeline as compiled, 0.5 at half speed
+     */
+    PlaybackScheduler(Controller controller, ServoTimeline timeline, IntConsumer actionPlayed, double speed) {
+        this.speed = new Speed(speed, 0, 0);
+        this.controller = controller;
+        this.timeline = timeline;
+        this.actionPlayed = actionPlayed;
+        this.thread = new Thread(this::play, "playback-scheduler");
+        this.thread.setDaemon(true);
+        this.thread.setPriority(Thread.MAX_PRIORITY);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Wakes the timing thread after entries were appended to the timeline.
+     */
+    void wakeUp() {
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Waits until the timeline is finished and played.
+     */
+    void finish() throws InterruptedException {
+        wakeUp();
+        thread.join();
+    }
+
+    /**
+     * Drops everything that has not been played yet.
+     */
+    void cancel() {
+        cancelled = true;
+        wakeUp();
+    }
+
+    /**
+     * Lets the controller clock start at the given score time instead of at the start of the score.
+     */
+    void startAt(long scoreTime) {
+        speed = new Speed(speed.factor, 0, scoreTime * 1000);
+    }
+
+    /**
+     * @return the instruction number of the last action that sounded, -1 when none did yet
+     */
+    int getLastPlayedInstruction() {
+        return lastPlayedInstruction;
+    }
+
+    void setSpeed(double factor) {
+        long now = controller.currentTimestampMicros();
+        if (now == Controller.NO_CLOCK || !playing) {
+            speed = new Speed(factor, 0, 0);
+        } else {
+            speed = new Speed(factor, now, speed.toScore(now));
+        }
+        wakeUp();
+    }
+
+    /**
+     * @return ms on the controller clock until the given score time, or {@link Controller#NO_CLOCK}
+     */
+    long millisUntil(long scoreTime) {
+        long now = controller.currentTimestampMicros();
+        if (now == Controller.NO_CLOCK) {
+            return Controller.NO_CLOCK;
+        }
+        return (speed.toClock(scoreTime * 1000) - now) / 1000;
+    }
+
+    /**
+     * Can be called while playing, every histogram is then copied in one go under its lock.
+     */
+    SchedulerStats getStats() {
+        SchedulerStats stats = new SchedulerStats();
+        stats.dispatched = dispatched;
+        stats.late = late;
+        stats.playing = playing;
+        stats.prepare = prepareLatency.getStats();
+        stats.hit = hitLatency.getStats();
+        return stats;
+    }
+
+    void play() {
+        playing = true;
+        try {
+            walk();
+        } finally {
+            playing = false;
+        }
+    }
+
+    private void walk() {
+        int index = 0;
+        while (!cancelled) {
+            while (index < timeline.size() && dispatchedAhead[index % WINDOW]) {
+                dispatchedAhead[index % WINDOW] = false;
+                index++;
+            }
+            if (index >= timeline.size()) {
+                if (timeline.isFinished()) {
+                    if (index >= timeline.size()) {
+                        break;
+                    }
+                } else {
+                    LockSupport.park(this);
+                }
+                continue;
+            }
+            long now = controller.currentTimestampMicros();
+            int next = index;
+            long due = 0;
+            if (now != Controller.NO_CLOCK) {
+                Speed current = speed;
+                next = earliest(current, index);
+                due = due(current, next);
+                if (now < due) {
+                    // parks for the whole ms, the rest of the last ms is spun
+                    controller.waitUntilTimestamp(Math.floorDiv(due, 1000));
+                    continue;
+                }
+            }
+            int board = timeline.board(next);
+            try {
+                if (board == ServoTimeline.ACTION_PLAYED) {
+                    lastPlayedInstruction = timeline.action(next);
+                    actionPlayed.accept(lastPlayedInstruction);
+                } else {
+                    controller.setServoPulse(board, timeline.port(next), timeline.pulse(next));
+                    if (now != Controller.NO_CLOCK) {
+                        record(timeline.isHit(next), controller.currentTimestampMicros() - due);
+                    }
+                }
+            } catch (RuntimeException e) {
+                logger.error("Failed to play command {} of action {}", next, timeline.action(next), e);
+            }
+            dispatched++;
+            if (next == index) {
+                index++;
+            } else {
+                dispatchedAhead[next % WINDOW] = true;
+            }
+        }
+    }
+
+    /**
+     * Only the hit a move prepares is mapped through the speed, the lead stays in controller time. A later entry can
+     * then be due before an earlier one, so this looks ahead as far as a lead can pull an entry forward.
+     *
+     * @return the index of the entry that is due first
+     */
+    private int earliest(Speed speed, int index) {
+        long maxPull = Math.max(0, (long) (GuitarPlayer.PREPARE_TIME * 1000 * (1 - 1 / speed.factor)));
+        int best = index;
+        long bestDue = due(speed, index);
+        int end = Math.min(timeline.size(), index + WINDOW);
+        for (int i = index + 1; i < end && speed.toClock(timeline.time(i) * 1000) - maxPull < bestDue; i++) {
+            if (!dispatchedAhead[i % WINDOW]) {
+                long due = due(speed, i);
+                if (due < bestDue) {
+                    best = i;
+                    bestDue = due;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return controller time in µs the entry is due
+     */
+    private long due(Speed speed, int index) {
+        long lead = timeline.lead(index) * 1000L;
+        return speed.toClock(timeline.time(index) * 1000 + lead) - lead;
+    }
+
+    /**
+     * @param latency µs between the planned time and the moment the command was handed to the servo board
+     */
+    private void record(boolean hit, long latency) {
+        if (hit) {
+            hitLatency.record(latency);
+        } else {
+            prepareLatency.record(latency);
+        }
+        if (latency > LATE_THRESHOLD_MICROS) {
+            late++;
+        }
+    }
+}
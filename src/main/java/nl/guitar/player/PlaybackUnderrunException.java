@@ -0,0 +1,12 @@
+package nl.guitar.player;
+
+/**
+ * Thrown when streaming playback reaches an action the compiler hasn't delivered yet.
+ */
+public class PlaybackUnderrunException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public PlaybackUnderrunException(int instructionNumber, long timeStamp) {
+        super("Compiler fell behind playback, instruction " + instructionNumber + " was not ready @" + timeStamp + "ms");
+    }
+}
@@ -0,0 +1,129 @@
+package nl.guitar.player;
+
+import nl.guitar.controlers.SimulationController;
+import nl.guitar.domain.FredConfig;
+import nl.guitar.domain.PlectrumConfig;
+import nl.guitar.player.object.GuitarAction;
+import nl.guitar.player.object.GuitarNote;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static nl.guitar.player.GuitarPlayer.PREPARE_TIME;
+
+/**
+ * Plans the prepare moves of every string on its own. A string that was not struck during the last
+ * {@link GuitarPlayer#PREPARE_TIME} gets the full prepare window, otherwise the fred press and plectrum moves are
+ * squeezed in between the end of the previous strike on that string and the next hit. Other strings keep their
+ * full window, so they don't have to wait for a busy string.
+ */
+public final class PreparePlanner {
+    /**
+     * ms the plectrum needs to get through the string before the string can be prepared again.
+     */
+    static final long STRIKE_TIME = 20;
+
+    private final long[] lastStrike = new long[6];
+
+    PreparePlanner() {
+        Arrays.fill(lastStrike, Long.MIN_VALUE);
+    }
+
+    /**
+     * @param lead ms before the hit the move is planned when there is time enough
+     * @return when to make the move on the given string for a hit at hitTime
+     */
+    long deadline(int stringNumber, long hitTime, long lead) {
+        if (lead == 0 || stringNumber < 0 || lastStrike[stringNumber] == Long.MIN_VALUE) {
+            return hitTime - lead;
+        }
+        long window = hitTime - lastStrike[stringNumber] - STRIKE_TIME;
+        if (window >= PREPARE_TIME) {
+            return hitTime - lead;
+        }
+        // keeps the moves in the same order, just closer together
+        return hitTime - Math.max(0, window) * lead / PREPARE_TIME;
+    }
+
+    void struck(int stringNumber, long hitTime) {
+        if (stringNumber >= 0) {
+            lastStrike[stringNumber] = hitTime;
+        }
+    }
+
+    /**
+     * Shortest time between two hits on every string, below it the string counts as taken. A squeezed move gets the
+     * part of the window its phase lead is of {@link GuitarPlayer#PREPARE_TIME}, and needs
+     * {@link SimulationController#SERVO_MICROS_PER_PULSE} for the pulse it travels: the fret servo from one push to
+     * the other, the plectrum from down to up and the plectrum height from free to the furthest hit height.
+     */
+    public static long[] minStringGaps(List<PlectrumConfig> plectrumConfig, List<List<FredConfig>> fredConfig) {
+        long[] gaps = new long[6];
+        for (int string = 0; string < 6; string++) {
+            PlectrumConfig config = plectrumConfig.get(string);
+            float height = Math.max(Math.abs(config.soft - config.free), Math.abs(config.hard - config.free));
+            long window = Math.max(window(fretTravel(fredConfig.get(string)), TimelineCompiler.Phase.PRESS_FRED),
+                    Math.max(window(Math.abs(config.up - config.down), TimelineCompiler.Phase.PLECTRUM_UP),
+                            window(height, TimelineCompiler.Phase.PLECTRUM_HIT_POSITION)));
+            gaps[string] = STRIKE_TIME + window;
+        }
+        return gaps;
+    }
+
+    /**
+     * The prepare leads stay in controller time, so faster than the score a string gets less time between two
+     * notes. A note may come no closer to the last strike on its string than the string needs, and not so close that
+     * its moves get squeezed into the strike.
+     *
+     * @return the highest speed up to {@link GuitarPlayer#MAX_SPEED} at which the actions still get their string gaps,
+     * at least 1
+     */
+    public static double maxSpeed(List<GuitarAction> actions, long[] minStringGaps) {
+        long[] lastStrike = new long[6];
+        Arrays.fill(lastStrike, Long.MIN_VALUE);
+        double speed = GuitarPlayer.MAX_SPEED;
+        for (GuitarAction action : actions) {
+            for (GuitarNote note : action.notesToPlay) {
+                int string = note.getStringNumber();
+                if (string >= 0 && lastStrike[string] != Long.MIN_VALUE) {
+                    long gap = action.timeStamp - lastStrike[string];
+                    speed = Math.min(speed, (double) gap / Math.max(minStringGaps[string], STRIKE_TIME + PREPARE_TIME));
+                }
+            }
+            for (GuitarNote note : action.notesToPlay) {
+                if (note.isHit() && note.getStringNumber() >= 0) {
+                    lastStrike[note.getStringNumber()] = action.timeStamp;
+                }
+            }
+        }
+        return Math.max(1, speed);
+    }
+
+    /**
+     * Two neighbouring frets share a servo, so going from one to the other travels from push to push.
+     */
+    private static float fretTravel(List<FredConfig> configs) {
+        float travel = 0;
+        for (FredConfig config : configs) {
+            if (config.port < 0) {
+                continue;
+            }
+            travel = Math.max(travel, Math.abs(config.push - config.free));
+            for (FredConfig other : configs) {
+                if (other.address == config.address && other.port == config.port) {
+                    travel = Math.max(travel, Math.abs(config.push - other.push));
+                }
+            }
+        }
+        return travel;
+    }
+
+    /**
+     * @return the smallest window in ms in which the move of the phase still gets to travel the pulse
+     */
+    private static long window(float pulse, TimelineCompiler.Phase phase) {
+        // whole ms, the way deadline() hands them out
+        long travel = (long) Math.ceil((long) (pulse * SimulationController.SERVO_MICROS_PER_PULSE) / 1000.0);
+        return (travel * PREPARE_TIME + phase.lead - 1) / phase.lead;
+    }
+}
@@ -0,0 +1,129 @@
+package nl.guitar.player;
+
+import java.util.Arrays;
+
+/**
+ * Time sorted list of servo commands, kept in primitive columns so walking it during playback allocates nothing.
+ * Entries with board {@link #ACTION_PLAYED} are markers for the moment all notes of an action sounded.
+ *
+ * The times are score times. A prepare move also keeps its lead, the ms before the hit it prepares, so the player can
+ * keep the lead in controller time when it plays faster or slower than the score.
+ *
+ * One thread appends while another one reads: a reader only looks at the entries below {@link #size()}.
+ */
+final class ServoTimeline {
+    static final int ACTION_PLAYED = -1;
+    static final int DEFAULT_CAPACITY = 4096;
+
+    private static final class Columns {
+        final long[] time;
+        final int[] lead;
+        final int[] board;
+        final short[] port;
+        final float[] pulse;
+        final int[] action;
+        final boolean[] hit;
+
+        Columns(int capacity) {
+            time = new long[capacity];
+            lead = new int[capacity];
+            board = new int[capacity];
+            port = new short[capacity];
+            pulse = new float[capacity];
+            action = new int[capacity];
+            hit = new boolean[capacity];
+        }
+
+        Columns(Columns old, int capacity) {
+            time = Arrays.copyOf(old.time, capacity);
+            lead = Arrays.copyOf(old.lead, capacity);
+            board = Arrays.copyOf(old.board, capacity);
+            port = Arrays.copyOf(old.port, capacity);
+            pulse = Arrays.copyOf(old.pulse, capacity);
+            action = Arrays.copyOf(old.action, capacity);
+            hit = Arrays.copyOf(old.hit, capacity);
+        }
+    }
+
+    private volatile Columns columns;
+    private volatile int size;
+    private volatile boolean finished;
+
+    ServoTimeline(int capacity) {
+        columns = new Columns(Math.max(16, capacity));
+    }
+
+    /**
+     * @param hit true for the plectrum moves that make the notes sound, false for the prepare moves
+     */
+    void add(long time, int board, short port, float pulse, int action, boolean hit) {
+        add(time, 0, board, port, pulse, action, hit);
+    }
+
+    /**
+     * @param lead ms between the time of the move and the hit it prepares
+     */
+    void add(long time, int lead, int board, short port, float pulse, int action, boolean hit) {
+        Columns c = columns;
+        int index = size;
+        if (index == c.time.length) {
+            c = new Columns(c, index * 2);
+            columns = c;
+        }
+        c.time[index] = time;
+        c.lead[index] = lead;
+        c.board[index] = board;
+        c.port[index] = port;
+        c.pulse[index] = pulse;
+        c.action[index] = action;
+        c.hit[index] = hit;
+        size = index + 1;
+    }
+
+    void addActionPlayed(long time, int action) {
+        add(time, ACTION_PLAYED, (short) -1, 0, action, true);
+    }
+
+    /**
+     * No more entries will be added.
+     */
+    void finish() {
+        finished = true;
+    }
+
+    boolean isFinished() {
+        return finished;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long time(int index) {
+        return columns.time[index];
+    }
+
+    int lead(int index) {
+        return columns.lead[index];
+    }
+
+    int board(int index) {
+        return columns.board[index];
+    }
+
+    short port(int index) {
+        return columns.port[index];
+    }
+
+    float pulse(int index) {
+        return columns.pulse[index];
+    }
+
+    int action(int index) {
+        return columns.action[index];
+    }
+
+    boolean isHit(int index) {
+        return columns.hit[index];
+    }
+}
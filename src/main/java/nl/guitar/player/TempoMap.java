@@ -0,0 +1,75 @@
+package nl.guitar.player;
+
+import java.util.Arrays;
+
+/**
+ * Tempo changes of a score by beat, a beat being a quarter note. Converts a beat position to ms since the start of
+ * the score with a binary search over the changes.
+ */
+public final class TempoMap {
+    public static final float DEFAULT_TEMPO = 60;
+
+    private double[] beats = new double[8];
+    private double[] millis = new double[8];
+    private float[] tempos = new float[8];
+    private int size;
+
+    public TempoMap() {
+        this(DEFAULT_TEMPO);
+    }
+
+    public TempoMap(float initialTempo) {
+        beats[0] = 0;
+        millis[0] = 0;
+        tempos[0] = initialTempo;
+        size = 1;
+    }
+
+    /**
+     * Sets the tempo from the given beat on, changes have to be added in beat order.
+     */
+    public void setTempo(double beat, float bpm) {
+        int last = size - 1;
+        if (beat < beats[last]) {
+            throw new IllegalArgumentException("Tempo change at beat " + beat + " before the change at beat " + beats[last]);
+        }
+        if (beat == beats[last]) {
+            tempos[last] = bpm;
+            return;
+        }
+        if (size == beats.length) {
+            beats = Arrays.copyOf(beats, size * 2);
+            millis = Arrays.copyOf(millis, size * 2);
+            tempos = Arrays.copyOf(tempos, size * 2);
+        }
+        beats[size] = beat;
+        millis[size] = toExactMillis(beat);
+        tempos[size] = bpm;
+        size++;
+    }
+
+    public float getTempo(double beat) {
+        return tempos[segment(beat)];
+    }
+
+    public long toMillis(double beat) {
+        return Math.round(toExactMillis(beat));
+    }
+
+    public int getChangeCount() {
+        return size - 1;
+    }
+
+    private double toExactMillis(double beat) {
+        int segment = segment(beat);
+        return millis[segment] + (beat - beats[segment]) * 60000d / tempos[segment];
+    }
+
+    private int segment(double beat) {
+        int index = Arrays.binarySearch(beats, 0, size, beat);
+        if (index >= 0) {
+            return index;
+        }
+        return Math.max(0, -index - 2);
+    }
+}
@@ -0,0 +1,235 @@
+package nl.guitar.player;
+
+import nl.guitar.domain.FredConfig;
+import nl.guitar.domain.PlectrumConfig;
+import nl.guitar.player.object.GuitarAction;
+import nl.guitar.player.object.GuitarNote;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static nl.guitar.player.GuitarPlayer.PREPARE_TIME;
+
+/**
+ * Turns actions into servo commands on a {@link ServoTimeline}. Every note is split into the prepare phases, planned
+ * per string by the {@link PreparePlanner}, and every action gets a hit. The phases are run in deadline order against
+ * the fred and plectrum state, so all config lookups and height calculations are done here instead of during playback.
+ *
+ * Actions have to be appended in time order, each one no earlier than the time stamp plus time till next note of
+ * the one before. A phase is only written once no later action can still put a phase in front of it, so the
+ * timeline can be played while actions are still appended.
+ */
+final class TimelineCompiler {
+    private static final Logger logger = LoggerFactory.getLogger(TimelineCompiler.class);
+
+    enum Phase {
+        PRESS_FRED(PREPARE_TIME),
+        PLECTRUM_UP(PREPARE_TIME * 2 / 3),
+        PLECTRUM_HIT_POSITION(PREPARE_TIME / 3),
+        HIT(0);
+
+        final long lead;
+
+        Phase(long lead) {
+            this.lead = lead;
+        }
+    }
+
+    private static final class Task implements Comparable<Task> {
+        final long deadline;
+        final long sequence;
+        final Phase phase;
+        final GuitarAction action;
+        final GuitarNote note;
+
+        /**
+         * @param note the note to prepare, null for the hit which plays all notes of the action
+         */
+        Task(long deadline, long sequence, Phase phase, GuitarAction action, GuitarNote note) {
+            this.deadline = deadline;
+            this.sequence = sequence;
+            this.phase = phase;
+            this.action = action;
+            this.note = note;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int result = Long.compare(deadline, other.deadline);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final ServoTimeline timeline;
+    private final List<PlectrumConfig> plectrumConfig;
+    private final List<List<FredConfig>> fredConfig;
+    private final long[] fredCount;
+    private final int[] fredPressed;
+    private final boolean[] isStringUp;
+    private final PriorityQueue<Task> pending = new PriorityQueue<>();
+    private final PreparePlanner planner = new PreparePlanner();
+    private long sequence;
+
+    /**
+     * The state arrays are updated while compiling, so they describe the guitar after the last compiled phase.
+     */
+    TimelineCompiler(ServoTimeline timeline, List<PlectrumConfig> plectrumConfig, List<List<FredConfig>> fredConfig,
+                     long[] fredCount, int[] fredPressed, boolean[] isStringUp) {
+        this.timeline = timeline;
+        this.plectrumConfig = plectrumConfig;
+        this.fredConfig = fredConfig;
+        this.fredCount = fredCount;
+        this.fredPressed = fredPressed;
+        this.isStringUp = isStringUp;
+    }
+
+    /**
+     * Compiles a whole plan on a timeline of its own, starting with all frets released and all plectrums up.
+     */
+    static ServoTimeline compile(List<GuitarAction> actions, List<PlectrumConfig> plectrumConfig,
+                                 List<List<FredConfig>> fredConfig, long[] fredCount) {
+        ServoTimeline timeline = new ServoTimeline(actions.size() * 8);
+        TimelineCompiler compiler = new TimelineCompiler(timeline, plectrumConfig, fredConfig, fredCount, new int[6],
+                new boolean[] { true, true, true, true, true, true });
+        for (GuitarAction action : actions) {
+            compiler.append(action);
+        }
+        compiler.finish();
+        return timeline;
+    }
+
+    void append(GuitarAction action) {
+        for (Phase phase : Phase.values()) {
+            if (phase == Phase.HIT) {
+                pending.add(new Task(action.timeStamp, sequence++, phase, action, null));
+                continue;
+            }
+            for (GuitarNote note : action.notesToPlay) {
+                long deadline = planner.deadline(note.getStringNumber(), action.timeStamp, phase.lead);
+                pending.add(new Task(deadline, sequence++, phase, action, note));
+            }
+        }
+        for (GuitarNote note : action.notesToPlay) {
+            if (note.isHit()) {
+                planner.struck(note.getStringNumber(), action.timeStamp);
+            }
+        }
+        // the next action sounds after this one rang for timeTillNextNote, and starts preparing PREPARE_TIME before
+        // at the earliest, the planner only moves prepare phases later
+        long next = action.timeStamp + action.timeTillNextNote;
+        long safe = (next < action.timeStamp ? action.timeStamp : next) - PREPARE_TIME;
+        while (!pending.isEmpty() && pending.peek().deadline <= safe) {
+            compile(pending.poll());
+        }
+    }
+
+    void finish() {
+        while (!pending.isEmpty()) {
+            compile(pending.poll());
+        }
+        timeline.finish();
+    }
+
+    private void compile(Task task) {
+        List<GuitarNote> notesToPlay = task.action.notesToPlay;
+        switch (task.phase) {
+            case PRESS_FRED:
+                prepareStringPressFredAndMovePlectrumToHigh(task, task.note);
+                break;
+            case PLECTRUM_UP:
+                prepareStringMovePlectrumToUp(task, task.note);
+                break;
+            case PLECTRUM_HIT_POSITION:
+                prepareStringMovePlectrumToHitPosition(task, task.note);
+                break;
+            case HIT:
+                logger.debug("Playing notes [{}]: @{}: {}", notesToPlay.size(), task.deadline, notesToPlay);
+                for (GuitarNote note : notesToPlay) {
+                    playString(task, note);
+                }
+                timeline.addActionPlayed(task.deadline, task.action.instructionNumber);
+                break;
+        }
+    }
+
+    private void prepareStringPressFredAndMovePlectrumToHigh(Task task, GuitarNote gn) {
+        if (gn.getStringNumber() == -1 && gn.getNoteValue() > 0) {
+            logger.debug("Not a correct string for {}", gn);
+            return;
+        }
+        int stringNumber = gn.getStringNumber();
+        int fredNumber = gn.getFred();
+
+        if (fredPressed[stringNumber] != fredNumber) {
+            if (fredPressed[stringNumber] > 0) {
+                resetFred(task, stringNumber);
+            }
+            fredPressed[stringNumber] = fredNumber;
+            if (fredNumber > 0) {
+                FredConfig fc = fredConfig.get(stringNumber).get(fredNumber - 1);
+                add(task, fc.address, fc.port, fc.push);
+            }
+        }
+        PlectrumConfig stringConfig = plectrumConfig.get(stringNumber);
+        add(task, stringConfig.adressHeight, stringConfig.portHeight, stringConfig.free);
+    }
+
+    private void prepareStringMovePlectrumToUp(Task task, GuitarNote gn) {
+        final int stringNumber = gn.getStringNumber();
+        if (stringNumber == -1 || !gn.isHit()) {
+            return;
+        }
+        PlectrumConfig stringConfig = plectrumConfig.get(stringNumber);
+        add(task, stringConfig.adressPlectrum, stringConfig.portPlectrum, stringConfig.up);
+        isStringUp[stringNumber] = true;
+    }
+
+    private void prepareStringMovePlectrumToHitPosition(Task task, GuitarNote gn) {
+        final int stringNumber = gn.getStringNumber();
+        if (stringNumber == -1 || !gn.isHit()) {
+            return;
+        }
+        PlectrumConfig stringConfig = plectrumConfig.get(stringNumber);
+
+        float heightDistance = stringConfig.hard - stringConfig.soft;
+        float height = stringConfig.soft;
+        if (fredPressed[stringNumber] > 1) {
+            height = stringConfig.soft + (heightDistance / fredCount[stringNumber] * (fredPressed[stringNumber] -1));
+        }
+        add(task, stringConfig.adressHeight, stringConfig.portHeight, height);
+    }
+
+    private void playString(Task task, GuitarNote gn) {
+        final int stringNumber = gn.getStringNumber();
+        if (stringNumber == -1 || !gn.isHit()) {
+            return;
+        }
+        float toPos;
+        PlectrumConfig stringConfig = plectrumConfig.get(stringNumber);
+        if (isStringUp[stringNumber]) {
+            toPos = stringConfig.down;
+            isStringUp[stringNumber] = false;
+        } else {
+            toPos = stringConfig.up;
+            isStringUp[stringNumber] = true;
+        }
+        add(task, stringConfig.adressPlectrum, stringConfig.portPlectrum, toPos);
+    }
+
+    private void resetFred(Task task, int stringNumber) {
+        List<FredConfig> configs = fredConfig.get(stringNumber);
+        for (int i = 0; i < configs.size(); i += 2) {
+            FredConfig fc = configs.get(i);
+            if (fc.port > -1) {
+                add(task, fc.address, fc.port, fc.free);
+            }
+        }
+    }
+
+    private void add(Task task, int board, short port, float pulse) {
+        timeline.add(task.deadline, (int) (task.action.timeStamp - task.deadline), board, port, pulse,
+                task.action.instructionNumber, task.phase == Phase.HIT);
+    }
+}
@@ -8,6 +8,8 @@ public class GuitarAction {
     public List<GuitarNote> notesToPlay = new ArrayList<>();
     public long timeTillNextNote;
     public long timeStamp;
+    public double beat;
+    public double beats;
     public int instructionNumber;
     public String error;
 
@@ -21,6 +23,7 @@ public class GuitarAction {
                 "notesToPlay=" + notesToPlay +
                 ", timeTillNextNote=" + timeTillNextNote +
                 ", timeStamp=" + timeStamp +
+                ", beat=" + beat +
                 ", error=" + error +
                 '}';
     }
@@ -7,10 +7,7 @@ import org.jfugue.theory.Note;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
 
 public class GuitarNote {
     private static final Logger logger = LoggerFactory.getLogger(GuitarNote.class);
@@ -18,43 +15,39 @@ public class GuitarNote {
     private short stringNumber = NO_STRING;
     private int fred = 0;
     private boolean hit = true;
-    private String name;
     private int noteValue;
-    private String noteDuration;
+    private double duration;
 
     public GuitarNote() {
         super();
     }
 
     public GuitarNote(Note note, GuitarTuning guitarTuning, int[] stringsTaken, double duration, StringStrategy stringStrategy) {
-        this.noteDuration = String.valueOf(duration);
-        name = note.toString();
+        this.duration = duration;
         noteValue = note.getValue();
 
-        List<Short> possibleStringNumber = new ArrayList<>(6);
-
-        for (short i = 0; i < 6; i++) {
-            if (noteValue >= guitarTuning.getStartNote(i) && noteValue <= guitarTuning.getEndNote(i)) {
-                possibleStringNumber.add(i);
-            }
-        }
-        if (!possibleStringNumber.isEmpty()) {
-            Optional<Short> firstString = stringStrategy.getBestString(possibleStringNumber, stringsTaken, note.getValue());
-            stringNumber = firstString.orElse(NO_STRING);
-        }
+        // asked even when no string fits, a PlannedStringStrategy hands out one string per note
+        stringNumber = (short) stringStrategy.getBestString(guitarTuning.getStringMask(noteValue), stringsTaken, noteValue);
         if (stringNumber >= 0) {
-            fred = noteValue - guitarTuning.getStartNote(stringNumber);
+            fred = guitarTuning.getFret(noteValue, stringNumber);
         } else {
             hit = false;
-            logger.warn("[" + stringStrategy.getClass().getSimpleName() + "] No Strings available for note " + noteValue + "[" + guitarTuning.getStartNote(0) + " - " + guitarTuning.getEndNote(5) + "] => " + Arrays.toString(stringsTaken));
+            if (logger.isWarnEnabled()) {
+                logger.warn("[{}] No Strings available for note {}[{} - {}] => {}", stringStrategy.getName(), noteValue,
+                        guitarTuning.getStartNote(0), guitarTuning.getEndNote(5), Arrays.toString(stringsTaken));
+            }
         }
     }
 
     public GuitarNote(short stringNumber, int fred, boolean hit) {
+        this(stringNumber, fred, hit, -1);
+    }
+
+    public GuitarNote(short stringNumber, int fred, boolean hit, int noteValue) {
         this.stringNumber = stringNumber;
         this.fred = fred;
         this.hit = hit;
-        this.noteValue = -1;
+        this.noteValue = noteValue;
     }
 
     public int getNoteValue() {
@@ -91,19 +84,22 @@ public class GuitarNote {
         return result;
     }
 
+    /**
+     * @return the tone and octave like E4, derived when asked so compiling a score builds no names
+     */
     public String getName() {
-        return name;
+        return noteValue < 0 ? null : Note.getToneString((byte) noteValue);
     }
 
     @Override
     public String toString() {
         return "GuitarNote{" +
                 "noteValue=" + noteValue +
-                ", noteDuration=" + noteDuration +
+                ", duration=" + duration +
                 ", stringNumber=" + stringNumber +
                 ", fred=" + fred +
                 ", hit=" + hit +
-                ", name='" + name + '\'' +
+                ", name='" + getName() + '\'' +
                 '}';
     }
 }
@@ -2,11 +2,6 @@ package nl.guitar.player.strategy;
 
 import nl.guitar.player.tuning.GuitarTuning;
 
-import java.util.Comparator;
-import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
-
 public class ComplexStringStrategy implements StringStrategy {
 
     private final GuitarTuning guitarTuning;
@@ -16,17 +11,19 @@ public class ComplexStringStrategy implements StringStrategy {
     }
 
     @Override
-    public Optional<Short> getBestString(List<Short> possibleStringNumber, int[] stringsTaken, byte noteValue) {
-        List<Short> possibleStrings = possibleStringNumber.stream().filter(s -> stringsTaken[s] == -1 || stringsTaken[s] == noteValue).sorted().collect(Collectors.toList());
-        Short best = null;
+    public int getBestString(int stringMask, int[] stringsTaken, int noteValue) {
+        int available = StringStrategy.available(stringMask, stringsTaken, noteValue);
+        int best = NO_STRING;
         int bestDistance = Integer.MIN_VALUE;
-        for (Short s : possibleStrings) {
-            int distance = guitarTuning.getStartNote(s.intValue()) - noteValue;
-            if (distance > bestDistance) {
-                bestDistance = distance;
-                best = s;
+        for (int s = 0; available != 0; s++, available >>>= 1) {
+            if ((available & 1) != 0) {
+                int distance = guitarTuning.getStartNote(s) - noteValue;
+                if (distance > bestDistance) {
+                    bestDistance = distance;
+                    best = s;
+                }
             }
         }
-        return Optional.ofNullable(best);
+        return best;
     }
 }
@@ -0,0 +1,38 @@
+package nl.guitar.player.strategy;
+
+/**
+ * Hands out strings picked earlier for a chord, by a {@link StringPlanner} or another strategy, one per note in the
+ * order the notes are asked for. The strings taken are not looked at, they were weighed when the strings were picked.
+ */
+public class PlannedStringStrategy implements StringStrategy {
+    private short[] strings = new short[0];
+    private int next;
+    private String name = getClass().getSimpleName();
+
+    public void setStrings(short[] strings) {
+        this.strings = strings;
+        this.next = 0;
+    }
+
+    /**
+     * @param name of the strategy that picked the strings, so errors read the same as when it picked them
+     */
+    public void setStrings(short[] strings, String name) {
+        setStrings(strings);
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getBestString(int stringMask, int[] stringsTaken, int noteValue) {
+        if (next >= strings.length) {
+            return NO_STRING;
+        }
+        short string = strings[next++];
+        return string >= 0 && (stringMask & 1 << string) != 0 ? string : NO_STRING;
+    }
+}
@@ -0,0 +1,218 @@
+package nl.guitar.player.strategy;
+
+import nl.guitar.player.tuning.GuitarTuning;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Picks the strings for a whole score at once instead of chord by chord. Every chord gets its possible string
+ * assignments, a Viterbi pass then finds the sequence with the fewest fret servo moves, strings struck again too
+ * soon with another note and unplayable notes, in that order of cheapness.
+ *
+ * The fret state a chord starts from is the one its best predecessor left, so frets held over several chords are
+ * counted too. Two neighbouring frets share a servo, moving between them is a single move.
+ */
+public final class StringPlanner {
+    static final int FRET_MOVE_COST = 1;
+    static final int CONFLICT_COST = 20;
+    static final int UNPLAYABLE_COST = 100;
+    /**
+     * Assignments tried per chord, the cheapest frets are tried first so big chords don't blow up the search.
+     */
+    static final int MAX_ASSIGNMENTS = 64;
+
+    private final int[] start = new int[6];
+    private final int[] end = new int[6];
+    private final long[] minStringGaps = new long[6];
+
+    private static final class Assignment {
+        final short[] strings;
+        final byte[] frets = new byte[6];
+        final int unplayable;
+        int cost;
+        int previous = -1;
+
+        Assignment(short[] strings, int[] noteValues, int[] start) {
+            this.strings = strings;
+            Arrays.fill(frets, (byte) -1);
+            int missing = 0;
+            for (int i = 0; i < strings.length; i++) {
+                if (strings[i] < 0) {
+                    missing++;
+                } else {
+                    frets[strings[i]] = (byte) (noteValues[i] - start[strings[i]]);
+                }
+            }
+            this.unplayable = missing;
+        }
+    }
+
+    /**
+     * @param minStringGaps ms between two hits on every string below which the string can't change fret
+     */
+    public StringPlanner(GuitarTuning guitarTuning, long[] minStringGaps) {
+        for (int i = 0; i < 6; i++) {
+            start[i] = guitarTuning.getStartNote(i);
+            end[i] = guitarTuning.getEndNote(i);
+        }
+        System.arraycopy(minStringGaps, 0, this.minStringGaps, 0, 6);
+    }
+
+    StringPlanner(int[] start, int[] end, long[] minStringGaps) {
+        System.arraycopy(start, 0, this.start, 0, 6);
+        System.arraycopy(end, 0, this.end, 0, 6);
+        System.arraycopy(minStringGaps, 0, this.minStringGaps, 0, 6);
+    }
+
+    /**
+     * @param noteValues the notes of every chord, rests left out
+     * @param gaps       ms from every chord to the next one
+     * @return the string of every note, -1 for notes that can't be played
+     */
+    public short[][] plan(int[][] noteValues, long[] gaps) {
+        short[][] result = new short[noteValues.length][];
+        if (noteValues.length == 0) {
+            return result;
+        }
+        List<Assignment[]> layers = new ArrayList<>(noteValues.length);
+        byte[][] heldFrets = new byte[0][];
+        Assignment[] previous = null;
+        for (int chord = 0; chord < noteValues.length; chord++) {
+            Assignment[] current = assignments(noteValues[chord]);
+            byte[][] held = new byte[current.length][];
+            for (int i = 0; i < current.length; i++) {
+                Assignment assignment = current[i];
+                int local = assignment.unplayable * UNPLAYABLE_COST;
+                if (previous == null) {
+                    assignment.cost = local + moves(new byte[6], assignment);
+                } else {
+                    assignment.cost = Integer.MAX_VALUE;
+                    for (int p = 0; p < previous.length; p++) {
+                        int cost = previous[p].cost + local + moves(heldFrets[p], assignment)
+                                + conflicts(previous[p], assignment, gaps[chord - 1]) * CONFLICT_COST;
+                        if (cost < assignment.cost) {
+                            assignment.cost = cost;
+                            assignment.previous = p;
+                        }
+                    }
+                }
+                held[i] = hold(previous == null ? new byte[6] : heldFrets[assignment.previous], assignment);
+            }
+            layers.add(current);
+            heldFrets = held;
+            previous = current;
+        }
+
+        int best = 0;
+        for (int i = 1; i < previous.length; i++) {
+            if (previous[i].cost < previous[best].cost) {
+                best = i;
+            }
+        }
+        for (int chord = noteValues.length - 1; chord >= 0; chord--) {
+            Assignment assignment = layers.get(chord)[best];
+            result[chord] = assignment.strings;
+            best = assignment.previous;
+        }
+        return result;
+    }
+
+    /**
+     * @return the total cost of a plan, for comparing it with another one
+     */
+    int cost(int[][] noteValues, long[] gaps, short[][] plan) {
+        int cost = 0;
+        byte[] held = new byte[6];
+        Assignment previous = null;
+        for (int chord = 0; chord < noteValues.length; chord++) {
+            Assignment assignment = new Assignment(plan[chord], noteValues[chord], start);
+            cost += assignment.unplayable * UNPLAYABLE_COST + moves(held, assignment);
+            if (previous != null) {
+                cost += conflicts(previous, assignment, gaps[chord - 1]) * CONFLICT_COST;
+            }
+            held = hold(held, assignment);
+            previous = assignment;
+        }
+        return cost;
+    }
+
+    private Assignment[] assignments(int[] noteValues) {
+        List<Assignment> found = new ArrayList<>();
+        assign(noteValues, 0, new short[noteValues.length], new boolean[6], found);
+        return found.toArray(new Assignment[0]);
+    }
+
+    private void assign(int[] noteValues, int note, short[] strings, boolean[] used, List<Assignment> found) {
+        if (found.size() >= MAX_ASSIGNMENTS) {
+            return;
+        }
+        if (note == noteValues.length) {
+            found.add(new Assignment(strings.clone(), noteValues, start));
+            return;
+        }
+        boolean playable = false;
+        // highest open string first, which is the lowest fret
+        for (int string = 5; string >= 0; string--) {
+            if (!used[string] && noteValues[note] >= start[string] && noteValues[note] <= end[string]) {
+                playable = true;
+                used[string] = true;
+                strings[note] = (short) string;
+                assign(noteValues, note + 1, strings, used, found);
+                used[string] = false;
+            }
+        }
+        if (!playable) {
+            strings[note] = -1;
+            assign(noteValues, note + 1, strings, used, found);
+        }
+    }
+
+    private static int moves(byte[] held, Assignment assignment) {
+        int moves = 0;
+        for (int string = 0; string < 6; string++) {
+            int to = assignment.frets[string];
+            if (to >= 0) {
+                moves += fretMoves(held[string], to);
+            }
+        }
+        return moves * FRET_MOVE_COST;
+    }
+
+    /**
+     * Fret n is pushed by servo (n - 1) / 2, fret 0 is the open string.
+     */
+    private static int fretMoves(int from, int to) {
+        if (from == to) {
+            return 0;
+        }
+        if (from > 0 && to > 0 && (from - 1) / 2 == (to - 1) / 2) {
+            return 1;
+        }
+        return (from > 0 ? 1 : 0) + (to > 0 ? 1 : 0);
+    }
+
+    /**
+     * @return the strings struck again with another fret before they can be prepared for it
+     */
+    private int conflicts(Assignment previous, Assignment current, long gap) {
+        int conflicts = 0;
+        for (int string = 0; string < 6; string++) {
+            if (gap < minStringGaps[string] && previous.frets[string] >= 0 && current.frets[string] >= 0 && previous.frets[string] != current.frets[string]) {
+                conflicts++;
+            }
+        }
+        return conflicts;
+    }
+
+    private static byte[] hold(byte[] held, Assignment assignment) {
+        byte[] result = held.clone();
+        for (int string = 0; string < 6; string++) {
+            if (assignment.frets[string] >= 0) {
+                result[string] = assignment.frets[string];
+            }
+        }
+        return result;
+    }
+}
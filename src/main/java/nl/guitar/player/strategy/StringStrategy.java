@@ -1,8 +1,33 @@
 package nl.guitar.player.strategy;
 
-import java.util.List;
-import java.util.Optional;
-
 public interface StringStrategy {
-    Optional<Short> getBestString(List<Short> possibleStringNumber, int[] stringsTaken, byte noteValue);
+    int NO_STRING = -1;
+
+    /**
+     * @param stringMask   bit n set when the note fits on string n, see {@link nl.guitar.player.tuning.GuitarTuning#getStringMask(int)},
+     *                     0 when the note fits on no string at all
+     * @param stringsTaken the note value already on every string, -1 when the string is free
+     * @return the string to play the note on, or {@link #NO_STRING}
+     */
+    int getBestString(int stringMask, int[] stringsTaken, int noteValue);
+
+    /**
+     * Name used in the errors of notes this strategy couldn't place.
+     */
+    default String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * @return the strings of the mask that are free or already hold this note
+     */
+    static int available(int stringMask, int[] stringsTaken, int noteValue) {
+        int available = stringMask;
+        for (int string = 0; string < stringsTaken.length; string++) {
+            if (stringsTaken[string] != -1 && stringsTaken[string] != noteValue) {
+                available &= ~(1 << string);
+            }
+        }
+        return available;
+    }
 }
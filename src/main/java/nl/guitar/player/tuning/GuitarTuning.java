@@ -6,9 +6,13 @@ import nl.guitar.domain.FredConfig;
 import java.util.List;
 
 abstract public class GuitarTuning {
+    public static final int NOTES = 128;
     private static final int[] stringStartNote = new int[] { 28, 33, 38, 43, 47, 52};
     private final int[] start = new int[] { 28, 33, 38, 43, 47, 52};
     private final int[] end = new int[] { 28, 33, 38, 43, 47, 52};
+    private final byte[] stringMasks = new byte[NOTES];
+    private final byte[] frets = new byte[NOTES * 6];
+    private final String configFingerprint;
 
 
     GuitarTuning(int[] offset, ConfigRepository configRepository) {
@@ -28,6 +32,24 @@ abstract public class GuitarTuning {
                 }
             }
         }
+        for (int note = 0; note < NOTES; note++) {
+            for (int i = 0; i < 6; i++) {
+                if (note >= start[i] && note <= end[i]) {
+                    stringMasks[note] |= 1 << i;
+                    frets[note * 6 + i] = (byte) (note - start[i]);
+                } else {
+                    frets[note * 6 + i] = -1;
+                }
+            }
+        }
+        configFingerprint = configRepository.getConfigFingerprint();
+    }
+
+    /**
+     * Fingerprint of the config the string ranges were read from.
+     */
+    public String getConfigFingerprint() {
+        return configFingerprint;
     }
 
     public int getStartNote(int stringIndex) {
@@ -37,4 +59,18 @@ abstract public class GuitarTuning {
     public int getEndNote(int stringIndex) {
         return end[stringIndex];
     }
+
+    /**
+     * @return bit n set when the note can be played on string n, 0 for notes outside the MIDI range
+     */
+    public int getStringMask(int noteValue) {
+        return noteValue < 0 || noteValue >= NOTES ? 0 : stringMasks[noteValue];
+    }
+
+    /**
+     * @return the fred to press for the note on the string, 0 being the open string, or -1 when it doesn't fit
+     */
+    public int getFret(int noteValue, int stringIndex) {
+        return noteValue < 0 || noteValue >= NOTES ? -1 : frets[noteValue * 6 + stringIndex];
+    }
 }
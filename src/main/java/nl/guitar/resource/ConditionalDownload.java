@@ -0,0 +1,121 @@
+package nl.guitar.resource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Revalidation and gzip negotiation for the score downloads. A score is identified by the hash of its content,
+ * so a browser that sends the tag back gets a 304 instead of the score again. The gzipped and plain bodies are
+ * different entities and get different tags.
+ */
+final class ConditionalDownload {
+    static final String GZIP = "gzip";
+
+    private ConditionalDownload() {
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean any = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            if (GZIP.equals(name) || "x-gzip".equals(name)) {
+                return !hasZeroQuality(parameters);
+            } else if ("*".equals(name)) {
+                any = !hasZeroQuality(parameters);
+            }
+        }
+        return any;
+    }
+
+    static String entityTag(String hash, boolean gzip) {
+        return "\"" + hash + (gzip ? "-" + GZIP : "") + "\"";
+    }
+
+    /**
+     * If-None-Match wins over If-Modified-Since when both are sent, like RFC 7232 says.
+     *
+     * @param ifModifiedSince the header in ms, -1 when it was not sent
+     */
+    static boolean isNotModified(String ifNoneMatch, long ifModifiedSince, String entityTag, long lastModified) {
+        if (ifNoneMatch != null) {
+            return matches(ifNoneMatch, entityTag);
+        }
+        // HTTP dates are in whole seconds
+        return ifModifiedSince >= 0 && lastModified > 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    static GZIPOutputStream gzip(OutputStream out) throws IOException {
+        return new GZIPOutputStream(out, 8192) {
+            {
+                // compressed while the browser waits, on the Pi speed matters more than the last few percent
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        };
+    }
+
+    static void write(File file, OutputStream out) throws IOException {
+        Files.copy(file.toPath(), out);
+    }
+
+    /**
+     * Compresses once for bodies that are served many times, so it takes the time for the smallest result.
+     */
+    static byte[] gzipAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes, 8192) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        };
+        write(in, out);
+        out.finish();
+        return bytes.toByteArray();
+    }
+
+    static void write(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private static boolean matches(String ifNoneMatch, String entityTag) {
+        for (String tag : ifNoneMatch.split(",")) {
+            String trimmed = tag.trim();
+            // If-None-Match compares weakly
+            if (trimmed.startsWith("W/")) {
+                trimmed = trimmed.substring(2);
+            }
+            if ("*".equals(trimmed) || entityTag.equals(trimmed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasZeroQuality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2)) == 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
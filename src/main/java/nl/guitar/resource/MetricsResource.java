@@ -0,0 +1,43 @@
+package nl.guitar.resource;
+
+import nl.guitar.PlayerService;
+import nl.guitar.controlers.Controller;
+import nl.guitar.controlers.ShadowRegisterController;
+import nl.guitar.domain.SchedulerStats;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+@Path("/metrics")
+@Produces(MediaType.APPLICATION_JSON)
+public class MetricsResource {
+	private final PlayerService playerService;
+	private final Controller controller;
+
+	public MetricsResource(PlayerService playerService, Controller controller) {
+		this.playerService = playerService;
+		this.controller = controller;
+	}
+
+	@GET
+	@Path("playback")
+	public Response getPlaybackStats() {
+		SchedulerStats stats = playerService.getPlaybackStats();
+		if (stats == null) {
+			return Response.noContent().build();
+		}
+		return Response.ok(stats).build();
+	}
+
+	@GET
+	@Path("servo-writes")
+	public Response getServoWriteStats() {
+		if (!(controller instanceof ShadowRegisterController)) {
+			return Response.noContent().build();
+		}
+		return Response.ok(((ShadowRegisterController) controller).getWriteStats()).build();
+	}
+}
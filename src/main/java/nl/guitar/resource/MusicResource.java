@@ -1,23 +1,39 @@
 package nl.guitar.resource;
 
+import nl.guitar.PlanWarmup;
 import nl.guitar.PlayerService;
+import nl.guitar.domain.CacheStats;
+import nl.guitar.domain.CatalogPage;
+import nl.guitar.domain.WarmupStatus;
+import org.jfugue.integration.CompressedMusicXml;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 @Path("/music")
 @Consumes(MediaType.APPLICATION_JSON)
@@ -28,9 +44,11 @@ public class MusicResource {
     private final ExecutorService executorService = Executors.newFixedThreadPool(1);
 
     private PlayerService playerService;
+    private PlanWarmup planWarmup;
 
-	public MusicResource(PlayerService playerService){
+	public MusicResource(PlayerService playerService, PlanWarmup planWarmup){
 		this.playerService = playerService;
+		this.planWarmup = planWarmup;
 	}
 
 	@GET
@@ -39,6 +57,14 @@ public class MusicResource {
 		return playerService.getAvailableMusic();
 	}
 
+	@GET
+	@Path("catalog")
+	public CatalogPage getCatalog(@QueryParam("filter") String filter,
+								  @QueryParam("offset") @DefaultValue("0") int offset,
+								  @QueryParam("limit") @DefaultValue("50") int limit) {
+		return playerService.getCatalog(filter, offset, limit);
+	}
+
 	@POST
     @Path("start")
 	public Response start(@Context HttpServletRequest request) {
@@ -46,6 +72,27 @@ public class MusicResource {
 		return Response.ok().build();
 	}
 
+	@POST
+	@Path("seek/{instructionNumber}")
+	public Response seek(@PathParam("instructionNumber") int instructionNumber) {
+		executorService.submit(() -> playerService.seek(instructionNumber));
+		return Response.ok().build();
+	}
+
+	@POST
+	@Path("seek/time/{ms}")
+	public Response seekTime(@PathParam("ms") long ms) {
+		executorService.submit(() -> playerService.seekTime(ms));
+		return Response.ok().build();
+	}
+
+	@POST
+	@Path("resume")
+	public Response resume() {
+		executorService.submit(playerService::resume);
+		return Response.ok().build();
+	}
+
 	@POST
     @Path("stop")
     public Response stop(@Context HttpServletRequest request) {
@@ -68,11 +115,99 @@ public class MusicResource {
 	}
 
 	@GET
+	@Path("speed")
+	public double getSpeed() {
+		return playerService.getSpeed();
+	}
+
+	@POST
+	@Path("speed/{percentage}")
+	public Response setSpeed(@PathParam("percentage") int percentage) {
+		try {
+			playerService.setSpeed(percentage / 100d);
+		} catch (IllegalArgumentException e) {
+			return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+		}
+		return Response.ok().build();
+	}
+
+	@GET
+	@Path("cache")
+	public CacheStats getCacheStats() {
+		return playerService.getCacheStats();
+	}
+
+	@GET
+	@Path("warmup")
+	public WarmupStatus getWarmupStatus() {
+		return planWarmup.getStatus();
+	}
+
+	@POST
+	@Path("warmup")
+	public Response startWarmup(@Context HttpServletRequest request) {
+		planWarmup.start();
+		return Response.ok().build();
+	}
+
+	@POST
+	@Path("warmup/cancel")
+	public Response cancelWarmup(@Context HttpServletRequest request) {
+		planWarmup.cancel();
+		return Response.ok().build();
+	}
+
+	@GET
+	@Path("playability/{path}")
+	public Response getPlayability(@PathParam("path") String path) throws Exception {
+		try {
+			return Response.ok(playerService.getPlayability(playerService.getFileName(path))).build();
+		} catch (FileNotFoundException e) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+	}
+
+	/**
+	 * Loads the score for playing and streams its MusicXML, inflated when it is an .mxl. The browser has to ask again
+	 * with the tag of its copy, while the score did not change it gets a 304 instead of the score.
+	 */
+	@GET
     @Path("load/{path}")
     @Produces(MediaType.APPLICATION_XML)
-	public String start(@PathParam("path") String path) {
-	    playerService.load(path + ".xml");
-		return playerService.getCurrentFileContents();
+	public Response start(@PathParam("path") String path, @Context HttpServletRequest request) throws IOException {
+	    playerService.load(playerService.getFileName(path));
+		File score = playerService.getCurrentScore();
+		boolean gzip = ConditionalDownload.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+		String entityTag = ConditionalDownload.entityTag(playerService.getScoreHash(score), gzip);
+		Response.ResponseBuilder response;
+		if (ConditionalDownload.isNotModified(request.getHeader(HttpHeaders.IF_NONE_MATCH),
+				request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE), entityTag, score.lastModified())) {
+			response = Response.notModified();
+		} else {
+			response = Response.ok((StreamingOutput) out -> writeScore(score, out, gzip));
+			if (gzip) {
+				response.header(HttpHeaders.CONTENT_ENCODING, ConditionalDownload.GZIP);
+			}
+		}
+		return response.header(HttpHeaders.ETAG, entityTag)
+				.lastModified(new Date(score.lastModified()))
+				.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+				.header(HttpHeaders.CACHE_CONTROL, "no-cache")
+				.build();
+	}
+
+	private static void writeScore(File score, OutputStream out, boolean gzip) throws IOException {
+		OutputStream target = gzip ? ConditionalDownload.gzip(out) : out;
+		if (CompressedMusicXml.isCompressed(score)) {
+			try (InputStream inputStream = CompressedMusicXml.open(score)) {
+				ConditionalDownload.write(inputStream, target);
+			}
+		} else {
+			ConditionalDownload.write(score, target);
+		}
+		if (gzip) {
+			((GZIPOutputStream) target).finish();
+		}
 	}
 
 /*	@POST
@@ -0,0 +1,107 @@
+package nl.guitar.resource;
+
+import nl.guitar.util.FileUtil;
+import org.jfugue.integration.CompressedMusicXml;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves the sample sheets of the play page with a tag to revalidate against, and gzipped when the browser takes
+ * it. The sheets are in the jar and never change while running, so every sheet is hashed and compressed once, on
+ * its first request, and later requests get the same bytes.
+ */
+@WebFilter(urlPatterns = "/play/sheets/*")
+public class SheetFilter implements Filter {
+    private static final String RESOURCES = "META-INF/resources";
+
+    private final Map<String, Sheet> sheets = new ConcurrentHashMap<>();
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+        String path = request.getServletPath() + (request.getPathInfo() == null ? "" : request.getPathInfo());
+        boolean head = HttpMethod.HEAD.equals(request.getMethod());
+        URL sheet = path.contains("..") || path.endsWith("/") ? null : Thread.currentThread().getContextClassLoader().getResource(RESOURCES + path);
+        if (sheet == null || !(head || HttpMethod.GET.equals(request.getMethod()))) {
+            chain.doFilter(servletRequest, servletResponse);
+            return;
+        }
+
+        URLConnection connection = sheet.openConnection();
+        long lastModified = connection.getLastModified();
+        Sheet compiled = getSheet(path, sheet);
+        // an .mxl is a zip already
+        boolean gzip = compiled.gzipped != null && ConditionalDownload.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        String entityTag = ConditionalDownload.entityTag(compiled.hash, gzip);
+        response.setHeader(HttpHeaders.ETAG, entityTag);
+        if (lastModified > 0) {
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        }
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        if (ConditionalDownload.isNotModified(request.getHeader(HttpHeaders.IF_NONE_MATCH),
+                request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE), entityTag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        String contentType = request.getServletContext().getMimeType(path);
+        response.setContentType(contentType != null ? contentType : MediaType.APPLICATION_OCTET_STREAM);
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, ConditionalDownload.GZIP);
+            response.setContentLength(compiled.gzipped.length);
+        } else {
+            response.setContentLengthLong(connection.getContentLengthLong());
+        }
+        if (head) {
+            return;
+        }
+        if (gzip) {
+            response.getOutputStream().write(compiled.gzipped);
+        } else {
+            try (InputStream inputStream = connection.getInputStream()) {
+                ConditionalDownload.write(inputStream, response.getOutputStream());
+            }
+        }
+    }
+
+    private Sheet getSheet(String path, URL url) throws IOException {
+        Sheet sheet = sheets.get(path);
+        if (sheet == null) {
+            sheet = new Sheet();
+            try (InputStream inputStream = url.openStream()) {
+                sheet.hash = FileUtil.toSHA1(inputStream);
+            }
+            if (!path.endsWith(CompressedMusicXml.EXTENSION)) {
+                try (InputStream inputStream = url.openStream()) {
+                    sheet.gzipped = ConditionalDownload.gzipAll(inputStream);
+                }
+            }
+            sheets.put(path, sheet);
+        }
+        return sheet;
+    }
+
+    private static final class Sheet {
+        String hash;
+        // null when the sheet is not worth compressing
+        byte[] gzipped;
+    }
+}
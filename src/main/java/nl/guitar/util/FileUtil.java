@@ -1,5 +1,9 @@
 package nl.guitar.util;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -7,14 +11,40 @@ import java.security.NoSuchAlgorithmException;
 public final class FileUtil {
 
     public static String toSHA1(String string) {
-        MessageDigest md = null;
-        try {
-            md = MessageDigest.getInstance("SHA-1");
+        return toSHA1(string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String toSHA1(byte[]... parts) {
+        MessageDigest md = sha1();
+        for (byte[] part : parts) {
+            md.update(part);
+        }
+        return byteArrayToHexString(md.digest());
+    }
+
+    public static String toSHA1(File file) throws IOException {
+        try (InputStream is = new FileInputStream(file)) {
+            return toSHA1(is);
         }
-        catch(NoSuchAlgorithmException e) {
-            e.printStackTrace();
+    }
+
+    public static String toSHA1(InputStream is) throws IOException {
+        MessageDigest md = sha1();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            md.update(buffer, 0, read);
+        }
+        return byteArrayToHexString(md.digest());
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM has to support SHA-1
+            throw new IllegalStateException(e);
         }
-        return byteArrayToHexString(md.digest(string.getBytes(StandardCharsets.UTF_8)));
     }
 
     public static String byteArrayToHexString(byte[] b) {
@@ -0,0 +1,112 @@
+package org.jfugue.integration;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads compressed MusicXML, the <code>.mxl</code> zip that MuseScore exports. The score is the first rootfile
+ * listed in <code>META-INF/container.xml</code>, or the first <code>.xml</code> outside <code>META-INF</code>
+ * when there is no container. The score entry is inflated while it is read, never into a file or a string.
+ */
+public final class CompressedMusicXml {
+	public static final String EXTENSION = ".mxl";
+
+	private static final String CONTAINER = "META-INF/container.xml";
+
+	private CompressedMusicXml() {
+	}
+
+	public static boolean isCompressed(File file) {
+		return file.getName().endsWith(EXTENSION);
+	}
+
+	/**
+	 * @return the uncompressed score, closing it closes the archive
+	 */
+	public static InputStream open(File file) throws IOException {
+		final ZipFile zipFile = new ZipFile(file);
+		try {
+			ZipEntry score = findScore(zipFile);
+			if (score == null) {
+				throw new ZipException("No MusicXML score in " + file);
+			}
+			return new FilterInputStream(zipFile.getInputStream(score)) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						zipFile.close();
+					}
+				}
+			};
+		} catch (IOException | RuntimeException e) {
+			zipFile.close();
+			throw e;
+		}
+	}
+
+	private static ZipEntry findScore(ZipFile zipFile) throws IOException {
+		ZipEntry container = zipFile.getEntry(CONTAINER);
+		if (container != null) {
+			String rootFile;
+			try (InputStream inputStream = zipFile.getInputStream(container)) {
+				rootFile = readRootFile(inputStream);
+			}
+			if (rootFile != null) {
+				ZipEntry score = zipFile.getEntry(rootFile);
+				if (score == null) {
+					throw new ZipException(CONTAINER + " points to " + rootFile + ", which is not in " + zipFile.getName());
+				}
+				return score;
+			}
+		}
+		Enumeration<? extends ZipEntry> entries = zipFile.entries();
+		while (entries.hasMoreElements()) {
+			ZipEntry entry = entries.nextElement();
+			if (!entry.isDirectory() && !entry.getName().startsWith("META-INF/") && entry.getName().endsWith(".xml")) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	private static String readRootFile(InputStream inputStream) throws IOException {
+		XMLStreamReader reader = null;
+		try {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			reader = factory.createXMLStreamReader(inputStream);
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT && "rootfile".equals(reader.getLocalName())) {
+					String fullPath = reader.getAttributeValue(null, "full-path");
+					if (fullPath != null && !fullPath.isEmpty()) {
+						return fullPath;
+					}
+				}
+			}
+			return null;
+		} catch (XMLStreamException e) {
+			throw new ZipException("Unreadable " + CONTAINER + ": " + e.getMessage());
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					// nothing left to read
+				}
+			}
+		}
+	}
+}
@@ -19,16 +19,28 @@
 
 package org.jfugue.integration;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import nu.xom.Builder;
 import nu.xom.Document;
@@ -39,9 +51,14 @@ import nu.xom.ValidityException;
 
 import org.jfugue.midi.MidiDictionary;
 import org.jfugue.parser.Parser;
+import org.jfugue.parser.ParserListener;
+import org.jfugue.parser.PrimitiveNoteListener;
 import org.jfugue.theory.Chord;
 import org.jfugue.theory.Note;
 import org.staccato.DefaultNoteSettingsManager;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 /**
  * Parses a MusicXML file, and fires events for <code>ParserListener</code>
@@ -94,6 +111,14 @@ public final class MusicXmlParser extends Parser {
 			this.name = name;
 			instruments = new MidiInstrument[16];
 		}
+
+		public PartContext(PartContext other) {
+			this.id = other.id;
+			this.name = other.name;
+			this.instruments = other.instruments;
+			this.currentVolume = other.currentVolume;
+			this.voice = other.voice;
+		}
 	};
 
 	private static class VoiceDefinition {
@@ -135,6 +160,7 @@ public final class MusicXmlParser extends Parser {
 	
 	private Builder xomBuilder;
 	private Document xomDoc;
+	private final EntityResolver entityResolver;
 
 	private byte curVelocity = DefaultNoteSettingsManager.getInstance().getDefaultOnVelocity();
 	private byte beatsPerMeasure;
@@ -149,6 +175,11 @@ public final class MusicXmlParser extends Parser {
 	private VoiceDefinition[] voices;
 	private PartContext currentPart; 
 
+	private boolean parallelParts;
+	private boolean streaming;
+	// false when all listeners take primitive note events, so no Note objects are built
+	private boolean noteObjectsNeeded = true;
+
 	private static final Comparator<String> CHORD_COMPARATOR = new Comparator<String>() {
 		@Override
 		public int compare(String s1, String s2) {
@@ -216,7 +247,19 @@ public final class MusicXmlParser extends Parser {
 
 	// CONSTRUCTOR
 	public MusicXmlParser() throws ParserConfigurationException {
-		xomBuilder = new Builder();
+		this(new Builder(), null);
+	}
+
+	/**
+	 * @param entityResolver resolves the DTDs referenced by the score, for example to local copies
+	 */
+	public MusicXmlParser(EntityResolver entityResolver) throws ParserConfigurationException {
+		this(new Builder(createXmlReader(entityResolver)), entityResolver);
+	}
+
+	private MusicXmlParser(Builder xomBuilder, EntityResolver entityResolver) {
+		this.xomBuilder = xomBuilder;
+		this.entityResolver = entityResolver;
 
 		// Set up MusicXML default values
 		beatsPerMeasure = 1;
@@ -226,27 +269,87 @@ public final class MusicXmlParser extends Parser {
 		voices = new VoiceDefinition[32];
 	}
 
+	/**
+	 * @param parallelParts parse the parts of a part-wise score on separate threads, the listeners get the same
+	 *                      events in the same order either way
+	 */
+	public void setParallelParts(boolean parallelParts) {
+		this.parallelParts = parallelParts;
+	}
+
+	/**
+	 * @param streaming read the score with StAX and keep only the measure being parsed in memory, instead of
+	 *                  building the whole document first. The listeners get the same events, but a score that
+	 *                  turns out to be malformed halfway has fired the events before the error. Parts are then
+	 *                  always parsed one after the other.
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
 	public void parse(String musicXmlString) throws ValidityException,
 			ParsingException, IOException {
+		if (streaming) {
+			parseStreaming(new StringReader(musicXmlString), null);
+			return;
+		}
 		// URI is null when parsing a String as it's coming from somewhere else
 		parse(xomBuilder.build(musicXmlString, (String) null)); 
 	}
 
+	/**
+	 * @param inputFile a MusicXML file, or a compressed <code>.mxl</code> one
+	 */
 	public void parse(File inputFile) throws ValidityException,
 			ParsingException, IOException {
+		if (CompressedMusicXml.isCompressed(inputFile)) {
+			// relative references in the score resolve next to the archive
+			try (InputStream inputStream = CompressedMusicXml.open(inputFile)) {
+				if (streaming) {
+					parseStreaming(inputStream, inputFile.toURI().toString());
+				} else {
+					parse(xomBuilder.build(inputStream, inputFile.toURI().toString()));
+				}
+			}
+			return;
+		}
+		if (streaming) {
+			try (InputStream inputStream = new BufferedInputStream(new FileInputStream(inputFile))) {
+				parseStreaming(inputStream, inputFile.toURI().toString());
+			}
+			return;
+		}
 		parse(xomBuilder.build(inputFile));
 	}
 
-	public void parse(FileInputStream inputStream) throws ValidityException,
+	public void parse(InputStream inputStream) throws ValidityException,
 			ParsingException, IOException {
+		if (streaming) {
+			parseStreaming(inputStream, null);
+			return;
+		}
 		parse(xomBuilder.build(inputStream));
 	}
 
 	public void parse(Reader reader) throws ValidityException,
 			ParsingException, IOException {
+		if (streaming) {
+			parseStreaming(reader, null);
+			return;
+		}
 		parse(xomBuilder.build(reader));
 	}
 
+	private static XMLReader createXmlReader(EntityResolver entityResolver) throws ParserConfigurationException {
+		try {
+			XMLReader reader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+			reader.setEntityResolver(entityResolver);
+			return reader;
+		} catch (SAXException e) {
+			throw new ParserConfigurationException(e.getMessage());
+		}
+	}
+
 	private void parse(Document document) {
 		xomDoc = document;
 		parse();
@@ -264,7 +367,7 @@ public final class MusicXmlParser extends Parser {
 	 *             if there is an error parsing the pattern
 	 */
 	public void parse() {
-		fireBeforeParsingStarts();
+		startParsing();
 		Element root = xomDoc.getRootElement();
 		if (root.getQualifiedName().equalsIgnoreCase("score-timewise")) {
 			parseTimeWise(root);
@@ -275,21 +378,223 @@ public final class MusicXmlParser extends Parser {
 		// else Error document could not be parsed.
 	}
 	
+	private void startParsing() {
+		noteObjectsNeeded = needsNoteObjects();
+		fireBeforeParsingStarts();
+	}
+
+	/**
+	 * @param input    an <code>InputStream</code> or a <code>Reader</code>
+	 * @param systemId the location of the score to resolve relative DTD references against, may be null
+	 */
+	private void parseStreaming(Object input, String systemId) throws ParsingException {
+		XMLStreamReader reader = null;
+		try {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+			if (entityResolver != null) {
+				factory.setXMLResolver(StaxElements.toXmlResolver(entityResolver));
+			}
+			if (input instanceof Reader) {
+				reader = factory.createXMLStreamReader((Reader) input);
+			} else if (systemId != null) {
+				reader = factory.createXMLStreamReader(systemId, (InputStream) input);
+			} else {
+				reader = factory.createXMLStreamReader((InputStream) input);
+			}
+			parseStreaming(reader);
+		} catch (XMLStreamException e) {
+			Location location = e.getLocation();
+			if (location == null) {
+				throw new ParsingException(e.getMessage(), systemId, e);
+			}
+			throw new ParsingException(e.getMessage(), systemId, location.getLineNumber(), location.getColumnNumber(), e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					// nothing left to read
+				}
+			}
+		}
+	}
+
+	/**
+	 * Walks the score like {@link #parsePartWise} and {@link #parseTimeWise} do, but builds the part-list and one
+	 * measure at a time into an element and skips everything else.
+	 */
+	private void parseStreaming(XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+			// prolog
+		}
+		startParsing();
+		if (!reader.isStartElement()) {
+			return;
+		}
+		String rootName = StaxElements.qualifiedName(reader);
+		boolean timeWise = rootName.equalsIgnoreCase("score-timewise");
+		boolean partWise = rootName.equalsIgnoreCase("score-partwise");
+		if (!timeWise && !partWise) {
+			// else Error document could not be parsed.
+			return;
+		}
+		Map<String, PartContext> partHeaders = null;
+		int partIndex = -1;
+		int measureIndex = -1;
+		String partId = null;
+		int depth = 1;
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = reader.getLocalName();
+				if (depth == 1 && name.equals("part-list")) {
+					partHeaders = parsePartList(StaxElements.read(reader).getChildElements());
+				} else if (depth == 1 && partWise && name.equals("part")) {
+					partId = reader.getAttributeValue(null, "id");
+					switchPart(partHeaders, partId, ++partIndex);
+					depth++;
+				} else if (depth == 2 && partWise && name.equals("measure")) {
+					parseMusicData(partIndex, partId, partHeaders, StaxElements.read(reader));
+					fireBarLineParsed(0);
+				} else if (depth == 1 && timeWise && name.equals("measure")) {
+					parseTimeWiseMeasure(++measureIndex, StaxElements.read(reader), partHeaders);
+				} else {
+					StaxElements.skip(reader);
+				}
+			}
+		}
+	}
+
 	private void parsePartWise(Element root) {
 		Element partlist = root.getFirstChildElement("part-list"); 
 		Elements parts = partlist.getChildElements();
 		Map<String, PartContext> partHeaders = parsePartList(parts);
 		parts = root.getChildElements("part");
+		if (parallelParts && parts.size() > 1) {
+			parsePartsInParallel(parts, partHeaders);
+			return;
+		}
 		for (int childId = 0; childId < parts.size(); childId++) {
-			Element partElement =  parts.get(childId);
-			String partId = partElement.getAttribute("id").getValue();
-			switchPart(partHeaders, partId, childId);
-			Elements measures = partElement.getChildElements("measure");
-			for (int measure = 0; measure < measures.size(); measure++) {
-				parseMusicData(childId, partId, partHeaders, measures.get(measure));
-				fireBarLineParsed(0);
+			parsePart(childId, parts.get(childId), partHeaders);
+		}
+	}
+
+	private void parsePart(int childId, Element partElement, Map<String, PartContext> partHeaders) {
+		String partId = partElement.getAttribute("id").getValue();
+		switchPart(partHeaders, partId, childId);
+		Elements measures = partElement.getChildElements("measure");
+		for (int measure = 0; measure < measures.size(); measure++) {
+			parseMusicData(childId, partId, partHeaders, measures.get(measure));
+			fireBarLineParsed(0);
+		}
+	}
+
+	/**
+	 * Parses every part on its own thread into a {@link PartEventBuffer} and replays the buffers in part order, so
+	 * the listeners get exactly the events of the sequential parse.
+	 *
+	 * A part starts with the key, time, voice and volume state the parts before it left behind. A scanner runs
+	 * ahead through the parts following only those state changes, which is cheap as it builds no notes, and every
+	 * part is parsed by a copy of the scanner taken at the start of that part.
+	 */
+	private void parsePartsInParallel(Elements parts, Map<String, PartContext> partHeaders) {
+		Map<String, PartContext> scannerHeaders = copyPartHeaders(partHeaders);
+		MusicXmlParser scanner = fork();
+		List<CompletableFuture<PartEventBuffer>> buffers = new ArrayList<CompletableFuture<PartEventBuffer>>(parts.size());
+		RuntimeException scanFailure = null;
+		for (int childId = 0; childId < parts.size(); childId++) {
+			final int partIndex = childId;
+			final Element partElement = parts.get(childId);
+			final Map<String, PartContext> decoderHeaders = copyPartHeaders(scannerHeaders);
+			final MusicXmlParser decoder = scanner.fork();
+			buffers.add(CompletableFuture.supplyAsync(() -> decoder.parsePartIntoBuffer(partIndex, partElement, decoderHeaders)));
+			try {
+				scanner.scanPart(childId, partElement, scannerHeaders);
+			} catch (RuntimeException e) {
+				// the part that failed the scan fails its parse at the same element
+				scanFailure = e;
+				break;
 			}
 		}
+		for (CompletableFuture<PartEventBuffer> buffer : buffers) {
+			buffer.join().replay(getParserListeners());
+		}
+		if (scanFailure != null) {
+			throw scanFailure;
+		}
+		copyState(scanner);
+	}
+
+	private PartEventBuffer parsePartIntoBuffer(int childId, Element partElement, Map<String, PartContext> partHeaders) {
+		PartEventBuffer buffer = new PartEventBuffer();
+		addParserListener(buffer);
+		try {
+			parsePart(childId, partElement, partHeaders);
+		} catch (RuntimeException e) {
+			buffer.failed(e);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Follows the state changes of {@link #parsePart} without building notes. The scanner has no listeners, so the
+	 * events fired on the way go nowhere.
+	 */
+	private void scanPart(int childId, Element partElement, Map<String, PartContext> partHeaders) {
+		String partId = partElement.getAttribute("id").getValue();
+		switchPart(partHeaders, partId, childId);
+		Elements measures = partElement.getChildElements("measure");
+		for (int measure = 0; measure < measures.size(); measure++) {
+			Element musicDataRoot = measures.get(measure);
+			Element attributes = musicDataRoot.getFirstChildElement("attributes");
+			if (attributes != null) {
+				parseAttributes(attributes);
+			}
+			Elements childs = musicDataRoot.getChildElements();
+			for (int i = 0; i < childs.size(); i++) {
+				Element el = childs.get(i);
+				if (el.getLocalName().equals("note")) {
+					if (el.getFirstChildElement("grace") == null) {
+						parseNoteVoice(childId, el, partId, partHeaders);
+					}
+				} else if (el.getLocalName().equals("direction")) {
+					parseDirection(el);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return a parser without listeners in the same state as this one
+	 */
+	private MusicXmlParser fork() {
+		MusicXmlParser copy = new MusicXmlParser(xomBuilder, entityResolver);
+		copy.copyState(this);
+		return copy;
+	}
+
+	private void copyState(MusicXmlParser other) {
+		curVelocity = other.curVelocity;
+		noteObjectsNeeded = other.noteObjectsNeeded;
+		beatsPerMeasure = other.beatsPerMeasure;
+		divisionsPerBeat = other.divisionsPerBeat;
+		currentVoice = other.currentVoice;
+		currentLayer = other.currentLayer;
+		keySignature = other.keySignature;
+		nextVoice = other.nextVoice;
+		voices = other.voices.clone();
+		currentPart = other.currentPart;
+	}
+
+	private static Map<String, PartContext> copyPartHeaders(Map<String, PartContext> partHeaders) {
+		Map<String, PartContext> copy = new HashMap<String, PartContext>();
+		for (Map.Entry<String, PartContext> entry : partHeaders.entrySet()) {
+			copy.put(entry.getKey(), new PartContext(entry.getValue()));
+		}
+		return copy;
 	}
 
 	private void parseTimeWise(Element root) {
@@ -298,15 +603,18 @@ public final class MusicXmlParser extends Parser {
 		Map<String, PartContext> partHeaders = parsePartList(scoreParts);
 		Elements measures = root.getChildElements("measure");
 		for (int measureIndex = 0; measureIndex < measures.size(); measureIndex++) {
-			Element measureElement =  measures.get(measureIndex);
-			Elements parts = measureElement.getChildElements("part");
-			for (int partIndex = 0; partIndex < parts.size(); partIndex++) {
-				Element partElement = parts.get(partIndex);
-				String partId = partElement.getAttribute("id").getValue();
-				switchPart(partHeaders, partId, measureIndex);
-				parseMusicData(partIndex, partId, partHeaders, partElement);
-				fireBarLineParsed(0);
-			}
+			parseTimeWiseMeasure(measureIndex, measures.get(measureIndex), partHeaders);
+		}
+	}
+
+	private void parseTimeWiseMeasure(int measureIndex, Element measureElement, Map<String, PartContext> partHeaders) {
+		Elements parts = measureElement.getChildElements("part");
+		for (int partIndex = 0; partIndex < parts.size(); partIndex++) {
+			Element partElement = parts.get(partIndex);
+			String partId = partElement.getAttribute("id").getValue();
+			switchPart(partHeaders, partId, measureIndex);
+			parseMusicData(partIndex, partId, partHeaders, partElement);
+			fireBarLineParsed(0);
 		}
 	}
 
@@ -380,15 +688,7 @@ public final class MusicXmlParser extends Parser {
 	private void parseMusicData(int partIndex, String partId, Map<String, PartContext> partHeaders, Element musicDataRoot) {
 		Element attributes = musicDataRoot.getFirstChildElement("attributes");
 		if (attributes != null) { 				
-			KeySignature ks = parseKeySignature(attributes);
-			if (!keySignature.equals(ks)) {
-				keySignature = ks;
-				fireKeySignatureParsed(keySignature.getKey(), keySignature.getScale());
-			}
-			
-			//Time-Signature
-			this.divisionsPerBeat = getByteValueOrDefault(attributes.getFirstChildElement("divisions"), this.divisionsPerBeat);
-			this.beatsPerMeasure = getByteValueOrDefault( getRecursiveFirstChildElement(attributes, "time", "beats"), this.beatsPerMeasure);
+			parseAttributes(attributes);
 		}
 		
 		Elements childs = musicDataRoot.getChildElements();
@@ -399,17 +699,33 @@ public final class MusicXmlParser extends Parser {
 			} else if (el.getLocalName().equals("note")) {
 				parseNote(partIndex, el, partId, partHeaders);
 			} else if (el.getLocalName().equals("direction")) {
-				Element sound = el.getFirstChildElement("sound");
-				if (sound != null) {
-					String value = sound.getAttributeValue("dynamics");
-					if (value != null) {
-						currentPart.currentVolume = (byte) Float.parseFloat(value);
-					}
-					value = sound.getAttributeValue("tempo");
-					if (value != null) {
-						fireTempoChanged((int) Float.parseFloat(value));
-					}
-				}
+				parseDirection(el);
+			}
+		}
+	}
+
+	private void parseAttributes(Element attributes) {
+		KeySignature ks = parseKeySignature(attributes);
+		if (!keySignature.equals(ks)) {
+			keySignature = ks;
+			fireKeySignatureParsed(keySignature.getKey(), keySignature.getScale());
+		}
+		
+		//Time-Signature
+		this.divisionsPerBeat = getByteValueOrDefault(attributes.getFirstChildElement("divisions"), this.divisionsPerBeat);
+		this.beatsPerMeasure = getByteValueOrDefault( getRecursiveFirstChildElement(attributes, "time", "beats"), this.beatsPerMeasure);
+	}
+
+	private void parseDirection(Element direction) {
+		Element sound = direction.getFirstChildElement("sound");
+		if (sound != null) {
+			String value = sound.getAttributeValue("dynamics");
+			if (value != null) {
+				currentPart.currentVolume = (byte) Float.parseFloat(value);
+			}
+			value = sound.getAttributeValue("tempo");
+			if (value != null) {
+				fireTempoChanged((int) Float.parseFloat(value));
 			}
 		}
 	}
@@ -540,10 +856,9 @@ public final class MusicXmlParser extends Parser {
 
 	private void parseNote(int p, Element noteElement, String partId,
 			Map<String, PartContext> partHeaders) {
-		Note newNote = new Note();
-		newNote.setFirstNote(true);
-		
 		boolean isRest = false;
+		boolean isChord = false;
+		boolean isPercussion = false;
 		boolean isStartOfTie = false;
 		boolean isEndOfTie = false;
 		byte noteNumber = 0;
@@ -555,36 +870,22 @@ public final class MusicXmlParser extends Parser {
 		if (noteElement.getFirstChildElement("grace") != null) {
 			return;
 		}
-		Element voice = noteElement.getFirstChildElement("voice");
-		// TODO : !newNote.isHarmonicNote() is always true ...
-		if (voice != null && !newNote.isHarmonicNote()) {
-			if ((Byte.parseByte(voice.getValue()) - 1) != currentLayer) {
-				currentLayer = Byte.parseByte(voice.getValue());
-				currentLayer = (byte) (currentLayer - 1);
-				fireLayerChanged(currentLayer);
-			}
-		}
-		
-		enhanceFromChord(noteElement, newNote);
+		parseNoteVoice(p, noteElement, partId, partHeaders);
 
+		// one pass over the children instead of a lookup per element
+		Element element_duration = null;
+		Element notations = null;
+		Element lyric = null;
 		Elements noteEls = noteElement.getChildElements();
-		// See if note is part of a chord
 		for (int i = 0; i < noteEls.size(); i++) {
 			Element element = noteEls.get(i); 
 			String tagName = element.getQualifiedName(); 
-			if (tagName.equals("instrument")) {
-				PartContext header = partHeaders.get(partId);
-				MidiInstrument[] instruments = header.instruments; 
-				for (int y = 0; y < instruments.length; ++y) {
-					MidiInstrument ins = instruments[y]; 
-					if (ins != null && ins.id.equals(element.getAttributeValue("id"))) {
-						parseVoice(p, findInstrument(ins));
-						parseInstrumentAndFireChange(ins);
-					}
-				}
+			if (tagName.equals("chord")) {
+				// See if note is part of a chord
+				isChord = true;
 			} else if (tagName.equals("unpitched")) {
 				// To Determine if Note is Percussive
-				newNote.setPercussionNote(true);
+				isPercussion = true;
 				Element display_note = element.getFirstChildElement("display-step");
 				if (display_note != null) {
 					noteNumber = getNoteNumber(display_note.getValue().charAt(0));
@@ -592,8 +893,7 @@ public final class MusicXmlParser extends Parser {
 
 				Element display_octave = element.getFirstChildElement("display-octave");
 				if (display_octave != null) {
-					Byte octave_byte = new Byte(display_octave.getValue());
-					noteNumber += octave_byte * 12;
+					noteNumber += Byte.parseByte(display_octave.getValue()) * 12;
 				}
 			} else if (tagName.equals("pitch")) {
 				String sStep = element.getFirstChildElement("step").getValue();
@@ -618,17 +918,20 @@ public final class MusicXmlParser extends Parser {
 				noteNumber = (byte) intNoteNumber;
 			} else if (tagName.equals("rest")) {
 				isRest = true;
+			} else if (tagName.equals("duration") && element_duration == null) {
+				element_duration = element;
+			} else if (tagName.equals("notations") && notations == null) {
+				notations = element;
+			} else if (tagName.equals("lyric") && lyric == null) {
+				lyric = element;
 			}
-
 		}
 
 		// duration
-		Element element_duration = noteElement.getFirstChildElement("duration");
 		double durationValue = Double.parseDouble(element_duration.getValue());
 		decimalDuration = durationValue / (divisionsPerBeat * beatsPerMeasure);
 
 		// Tied Note
-		Element notations = noteElement.getFirstChildElement("notations");
 		if (notations != null) {
 			Element tied = notations.getFirstChildElement("tied");
 			if (tied != null) {
@@ -641,6 +944,35 @@ public final class MusicXmlParser extends Parser {
 			}
 		}
 
+		int flags = isChord ? PrimitiveNoteListener.CHORD : 0;
+		if (isRest) {
+			flags |= PrimitiveNoteListener.REST;
+		} else {
+			flags |= (isStartOfTie ? PrimitiveNoteListener.TIE_START : 0) | (isEndOfTie ? PrimitiveNoteListener.TIE_END : 0);
+		}
+		Note newNote = null;
+		if (noteObjectsNeeded) {
+			newNote = createNote(noteNumber, decimalDuration, isRest, isChord, isPercussion, isStartOfTie, isEndOfTie);
+		}
+		fireNote(newNote, isRest ? 0 : noteNumber, decimalDuration, flags);
+
+		// Add Lyric
+		if (lyric != null) {
+			Element lyric_text_element = lyric.getFirstChildElement("text");
+			if (lyric_text_element != null) {
+				fireLyricParsed(lyric_text_element.getValue());
+			}
+		}
+
+	}
+
+	private Note createNote(byte noteNumber, double decimalDuration, boolean isRest, boolean isChord, boolean isPercussion,
+			boolean isStartOfTie, boolean isEndOfTie) {
+		Note newNote = new Note();
+		newNote.setFirstNote(!isChord);
+		newNote.setHarmonicNote(isChord);
+		newNote.setPercussionNote(isPercussion);
+
 		byte attackVelocity = currentPart.currentVolume;
 		byte decayVelocity = this.curVelocity;
 
@@ -660,17 +992,63 @@ public final class MusicXmlParser extends Parser {
 			newNote.setOnVelocity(attackVelocity);
 			newNote.setOffVelocity(decayVelocity);
 		}
+		return newNote;
+	}
 
-		fireNoteParsed(newNote);
-		// Add Lyric
-		Element lyric = noteElement.getFirstChildElement("lyric");
-		if (lyric != null) {
-			Element lyric_text_element = lyric.getFirstChildElement("text");
-			if (lyric_text_element != null) {
-				fireLyricParsed(lyric_text_element.getValue());
+	/**
+	 * Hands the note to every listener in turn, as primitives to a {@link PrimitiveNoteListener} and as the
+	 * <code>Note</code> to the others.
+	 */
+	private void fireNote(Note note, byte value, double duration, int flags) {
+		for (ParserListener listener : getParserListeners()) {
+			if (listener instanceof PartEventBuffer) {
+				((PartEventBuffer) listener).onNote(note, value, duration, flags);
+			} else if (listener instanceof PrimitiveNoteListener) {
+				((PrimitiveNoteListener) listener).onNoteEvent(value, duration, flags);
+			} else {
+				listener.onNoteParsed(note);
 			}
 		}
+	}
 
+	/**
+	 * @return false when every listener takes the notes as primitives
+	 */
+	private boolean needsNoteObjects() {
+		for (ParserListener listener : getParserListeners()) {
+			if (!(listener instanceof PrimitiveNoteListener)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Switches layer and voice for the voice and instrument elements of a note, the only state a note changes.
+	 */
+	private void parseNoteVoice(int p, Element noteElement, String partId, Map<String, PartContext> partHeaders) {
+		Element voice = noteElement.getFirstChildElement("voice");
+		if (voice != null) {
+			if ((Byte.parseByte(voice.getValue()) - 1) != currentLayer) {
+				currentLayer = Byte.parseByte(voice.getValue());
+				currentLayer = (byte) (currentLayer - 1);
+				fireLayerChanged(currentLayer);
+			}
+		}
+
+		Elements instrumentEls = noteElement.getChildElements("instrument");
+		for (int i = 0; i < instrumentEls.size(); i++) {
+			Element element = instrumentEls.get(i);
+			PartContext header = partHeaders.get(partId);
+			MidiInstrument[] instruments = header.instruments; 
+			for (int y = 0; y < instruments.length; ++y) {
+				MidiInstrument ins = instruments[y]; 
+				if (ins != null && ins.id.equals(element.getAttributeValue("id"))) {
+					parseVoice(p, findInstrument(ins));
+					parseInstrumentAndFireChange(ins);
+				}
+			}
+		}
 	}
 
 	/**
@@ -715,19 +1093,6 @@ public final class MusicXmlParser extends Parser {
 		return 0;
 	}
 
-	private void enhanceFromChord(Element noteElement, Note note) {
-		Elements note_elements = noteElement.getChildElements();
-		for (int i = 0; i < note_elements.size(); i++) {
-			Element element = note_elements.get(i); 
-			String tagName = element.getQualifiedName(); 
-			if (tagName.equals("chord")) {
-				note.setHarmonicNote(true);
-				note.setFirstNote(false);
-			}
-		}
-		
-	}
-
 	/**
 	 * Parses a voice and fires a voice element
 	 * 
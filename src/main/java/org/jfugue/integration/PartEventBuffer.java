@@ -0,0 +1,168 @@
+package org.jfugue.integration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.jfugue.parser.ParserListener;
+import org.jfugue.parser.PrimitiveNoteListener;
+import org.jfugue.theory.Chord;
+import org.jfugue.theory.Note;
+
+/**
+ * Records the events of one part while it is parsed on its own thread, so they can be handed to the real listeners
+ * later in score order. When the part failed to parse the events before the failure are replayed and then the
+ * failure is thrown, as the sequential parse would have done.
+ */
+class PartEventBuffer implements ParserListener {
+	private final List<Consumer<ParserListener>> events = new ArrayList<Consumer<ParserListener>>();
+	private RuntimeException failure;
+
+	void failed(RuntimeException failure) {
+		this.failure = failure;
+	}
+
+	void replay(List<ParserListener> listeners) {
+		for (Consumer<ParserListener> event : events) {
+			for (ParserListener listener : listeners) {
+				event.accept(listener);
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Keeps both forms of a note, the replay hands each listener the form it takes.
+	 */
+	void onNote(Note note, byte value, double duration, int flags) {
+		events.add(listener -> {
+			if (listener instanceof PrimitiveNoteListener) {
+				((PrimitiveNoteListener) listener).onNoteEvent(value, duration, flags);
+			} else {
+				listener.onNoteParsed(note);
+			}
+		});
+	}
+
+	@Override
+	public void beforeParsingStarts() {
+		events.add(listener -> listener.beforeParsingStarts());
+	}
+
+	@Override
+	public void afterParsingFinished() {
+		events.add(listener -> listener.afterParsingFinished());
+	}
+
+	@Override
+	public void onTrackChanged(byte track) {
+		events.add(listener -> listener.onTrackChanged(track));
+	}
+
+	@Override
+	public void onLayerChanged(byte layer) {
+		events.add(listener -> listener.onLayerChanged(layer));
+	}
+
+	@Override
+	public void onInstrumentParsed(byte instrument) {
+		events.add(listener -> listener.onInstrumentParsed(instrument));
+	}
+
+	@Override
+	public void onTempoChanged(int tempoBPM) {
+		events.add(listener -> listener.onTempoChanged(tempoBPM));
+	}
+
+	@Override
+	public void onKeySignatureParsed(byte key, byte scale) {
+		events.add(listener -> listener.onKeySignatureParsed(key, scale));
+	}
+
+	@Override
+	public void onTimeSignatureParsed(byte numerator, byte powerOfTwo) {
+		events.add(listener -> listener.onTimeSignatureParsed(numerator, powerOfTwo));
+	}
+
+	@Override
+	public void onBarLineParsed(long id) {
+		events.add(listener -> listener.onBarLineParsed(id));
+	}
+
+	@Override
+	public void onTrackBeatTimeBookmarked(String timeBookmarkId) {
+		events.add(listener -> listener.onTrackBeatTimeBookmarked(timeBookmarkId));
+	}
+
+	@Override
+	public void onTrackBeatTimeBookmarkRequested(String timeBookmarkId) {
+		events.add(listener -> listener.onTrackBeatTimeBookmarkRequested(timeBookmarkId));
+	}
+
+	@Override
+	public void onTrackBeatTimeRequested(double time) {
+		events.add(listener -> listener.onTrackBeatTimeRequested(time));
+	}
+
+	@Override
+	public void onPitchWheelParsed(byte lsb, byte msb) {
+		events.add(listener -> listener.onPitchWheelParsed(lsb, msb));
+	}
+
+	@Override
+	public void onChannelPressureParsed(byte pressure) {
+		events.add(listener -> listener.onChannelPressureParsed(pressure));
+	}
+
+	@Override
+	public void onPolyphonicPressureParsed(byte key, byte pressure) {
+		events.add(listener -> listener.onPolyphonicPressureParsed(key, pressure));
+	}
+
+	@Override
+	public void onSystemExclusiveParsed(byte... bytes) {
+		events.add(listener -> listener.onSystemExclusiveParsed(bytes));
+	}
+
+	@Override
+	public void onControllerEventParsed(byte controller, byte value) {
+		events.add(listener -> listener.onControllerEventParsed(controller, value));
+	}
+
+	@Override
+	public void onLyricParsed(String lyric) {
+		events.add(listener -> listener.onLyricParsed(lyric));
+	}
+
+	@Override
+	public void onMarkerParsed(String marker) {
+		events.add(listener -> listener.onMarkerParsed(marker));
+	}
+
+	@Override
+	public void onFunctionParsed(String id, Object message) {
+		events.add(listener -> listener.onFunctionParsed(id, message));
+	}
+
+	@Override
+	public void onNotePressed(Note note) {
+		events.add(listener -> listener.onNotePressed(note));
+	}
+
+	@Override
+	public void onNoteReleased(Note note) {
+		events.add(listener -> listener.onNoteReleased(note));
+	}
+
+	@Override
+	public void onNoteParsed(Note note) {
+		events.add(listener -> listener.onNoteParsed(note));
+	}
+
+	@Override
+	public void onChordParsed(Chord chord) {
+		events.add(listener -> listener.onChordParsed(chord));
+	}
+}
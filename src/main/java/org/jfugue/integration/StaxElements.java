@@ -0,0 +1,155 @@
+package org.jfugue.integration;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import nu.xom.Attribute;
+import nu.xom.Element;
+
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Turns the element a StAX reader is on into a XOM element, so the streaming parser can hand single measures to
+ * the same code as the document parser.
+ */
+final class StaxElements {
+
+	private StaxElements() {
+	}
+
+	/**
+	 * Reads the element the reader is on, including everything in it, and leaves the reader on its end tag.
+	 */
+	static Element read(XMLStreamReader reader) throws XMLStreamException {
+		Element root = createElement(reader);
+		Element current = root;
+		while (true) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				Element child = createElement(reader);
+				current.appendChild(child);
+				current = child;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				if (current == root) {
+					return root;
+				}
+				current = (Element) current.getParent();
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				current.appendChild(reader.getText());
+				break;
+			default:
+				// comments and processing instructions are not used
+			}
+		}
+	}
+
+	/**
+	 * Skips the element the reader is on and leaves the reader on its end tag.
+	 */
+	static void skip(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	static String qualifiedName(XMLStreamReader reader) {
+		return qualifiedName(reader.getPrefix(), reader.getLocalName());
+	}
+
+	private static String qualifiedName(String prefix, String localName) {
+		return prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName;
+	}
+
+	private static Element createElement(XMLStreamReader reader) {
+		String namespaceUri = reader.getNamespaceURI();
+		Element element = new Element(qualifiedName(reader), namespaceUri == null ? "" : namespaceUri);
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			String attributeUri = reader.getAttributeNamespace(i);
+			element.addAttribute(new Attribute(qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+					attributeUri == null ? "" : attributeUri, reader.getAttributeValue(i)));
+		}
+		return element;
+	}
+
+	/**
+	 * Lets StAX look up the DTDs through the SAX resolver the document parser uses.
+	 */
+	static XMLResolver toXmlResolver(EntityResolver entityResolver) {
+		return new SaxResolver(entityResolver);
+	}
+
+	/**
+	 * Once StAX got a stream it no longer knows where that came from, the modules a DTD includes are then asked
+	 * for without a base. Those are resolved against the last DTD resolved with one.
+	 */
+	private static final class SaxResolver implements XMLResolver {
+		private final EntityResolver entityResolver;
+		private URI base;
+
+		SaxResolver(EntityResolver entityResolver) {
+			this.entityResolver = entityResolver;
+		}
+
+		@Override
+		public Object resolveEntity(String publicId, String systemId, String baseUri, String namespace) throws XMLStreamException {
+			try {
+				URI absoluteId = new URI(systemId);
+				if (baseUri != null) {
+					absoluteId = new URI(baseUri).resolve(absoluteId);
+				} else if (base != null) {
+					absoluteId = base.resolve(absoluteId);
+				}
+				if (absoluteId.isAbsolute()) {
+					base = absoluteId;
+				}
+				InputSource source = entityResolver.resolveEntity(publicId, absoluteId.toString());
+				if (source == null) {
+					source = new InputSource(absoluteId.toString());
+				}
+				if (source.getByteStream() != null) {
+					return source.getByteStream();
+				}
+				if (source.getCharacterStream() != null) {
+					return toInputStream(source.getCharacterStream());
+				}
+				return new URL(source.getSystemId()).openStream();
+			} catch (SAXException | IOException | URISyntaxException e) {
+				throw new XMLStreamException("Failed to resolve " + systemId, e);
+			}
+		}
+	}
+
+	private static InputStream toInputStream(Reader reader) throws IOException {
+		StringWriter content = new StringWriter();
+		char[] buffer = new char[4096];
+		int read;
+		while ((read = reader.read(buffer)) != -1) {
+			content.write(buffer, 0, read);
+		}
+		return new ByteArrayInputStream(content.toString().getBytes(StandardCharsets.UTF_8));
+	}
+}
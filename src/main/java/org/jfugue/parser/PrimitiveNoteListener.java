@@ -0,0 +1,21 @@
+package org.jfugue.parser;
+
+/**
+ * A listener that takes the notes of the MusicXmlParser as primitives. The parser calls
+ * {@link #onNoteEvent} on it instead of {@link ParserListener#onNoteParsed}, and only builds
+ * <code>Note</code> objects when a listener without this interface is registered as well.
+ */
+public interface PrimitiveNoteListener extends ParserListener {
+    public static final int REST = 1;
+    public static final int CHORD = 2;
+    public static final int TIE_START = 4;
+    public static final int TIE_END = 8;
+
+    /**
+     * @param value    the MIDI note value, 0 for a rest
+     * @param duration the duration in whole notes
+     * @param flags    {@link #REST}, {@link #CHORD} when the note sounds with the note before it,
+     *                 {@link #TIE_START} and {@link #TIE_END}
+     */
+    public void onNoteEvent(byte value, double duration, int flags);
+}
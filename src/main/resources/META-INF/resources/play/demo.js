@@ -131,6 +131,9 @@
              } else {
                 firstNote = false;
              }
+          } else if (e.data.indexOf("metrics:") === 0) {
+             var metrics = JSON.parse(e.data.substring("metrics:".length));
+             console.log('Hit latency p50 ' + metrics.hit.p50 + 'us p99 ' + metrics.hit.p99 + 'us max ' + metrics.hit.max + 'us');
           } else {
              console.log('Unknown command ' + e.data);
           }
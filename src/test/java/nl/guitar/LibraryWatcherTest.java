@@ -0,0 +1,190 @@
+package nl.guitar;
+
+import nl.guitar.controlers.NoOpController;
+import nl.guitar.data.ConfigRepository;
+import nl.guitar.data.MusicCatalog;
+import nl.guitar.player.GuitarPlayer;
+import nl.guitar.util.FileUtil;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class LibraryWatcherTest {
+
+    @Test(timeOut = 60000)
+    public void testTellsListenersWhatChanged() throws Exception {
+        File musicFolder = Files.createTempDirectory("music").toFile();
+        File configFolder = Files.createTempDirectory("config").toFile();
+        LibraryWatcher watcher = createWatcher(musicFolder, configFolder);
+        List<String> all = new CopyOnWriteArrayList<>();
+        BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        watcher.addListener(new LibraryWatcher.Listener() {
+            @Override
+            public void onConfigChanged() {
+                add("config");
+            }
+
+            @Override
+            public void onScoreChanged(File score) {
+                add("changed " + score.getName());
+            }
+
+            @Override
+            public void onScoreDeleted(File score) {
+                add("deleted " + score.getName());
+            }
+
+            private void add(String event) {
+                all.add(event);
+                events.add(event);
+            }
+        });
+        watcher.start();
+        try {
+            write(new File(musicFolder, "notes.txt"));
+            write(new File(configFolder, "other.conf"));
+            write(new File(configFolder, "fred.conf"));
+            assertEquals(waitFor(events, "config"), "config");
+
+            File score = new File(musicFolder, "song.mxl");
+            write(score);
+            assertEquals(waitFor(events, "changed song.mxl"), "changed song.mxl");
+
+            Files.delete(score.toPath());
+            assertEquals(waitFor(events, "deleted song.mxl"), "deleted song.mxl");
+        } finally {
+            watcher.stop();
+        }
+        // files that are neither config nor score are left out
+        assertTrue(all.stream().allMatch(e -> e.equals("config") || e.endsWith("song.mxl")), all.toString());
+    }
+
+    @Test(timeOut = 60000)
+    public void testOverflowChecksEveryScore() throws Exception {
+        File musicFolder = Files.createTempDirectory("music").toFile();
+        File configFolder = Files.createTempDirectory("config").toFile();
+        write(new File(musicFolder, "edited.xml"));
+        write(new File(musicFolder, "deleted.xml"));
+        write(new File(musicFolder, "same.xml"));
+        // the catalog as it was indexed before the changes
+        Map<String, String> index = new HashMap<>();
+        for (File score : musicFolder.listFiles()) {
+            index.put(score.getName(), FileUtil.toSHA1(score));
+        }
+        MusicCatalog musicCatalog = new MusicCatalog() {
+            @Override
+            public String getHash(File score) throws IOException {
+                return FileUtil.toSHA1(score);
+            }
+
+            @Override
+            public String getIndexedHash(File score) {
+                return index.get(score.getName());
+            }
+
+            @Override
+            public List<File> getIndexedScores() {
+                return index.keySet().stream().map(name -> new File(musicFolder, name)).collect(Collectors.toList());
+            }
+
+            @Override
+            public void onScoreChanged(File score) {
+            }
+
+            @Override
+            public void onScoreDeleted(File score) {
+            }
+        };
+        // the changes the watcher missed
+        Files.write(new File(musicFolder, "edited.xml").toPath(), "<b/>".getBytes(StandardCharsets.UTF_8));
+        Files.delete(new File(musicFolder, "deleted.xml").toPath());
+        write(new File(musicFolder, "added.xml"));
+
+        LibraryWatcher watcher = createWatcher(musicFolder, configFolder, musicCatalog);
+        List<String> events = new CopyOnWriteArrayList<>();
+        watcher.addListener(new LibraryWatcher.Listener() {
+            @Override
+            public void onConfigChanged() {
+                events.add("config");
+            }
+
+            @Override
+            public void onScoreChanged(File score) {
+                events.add("changed " + score.getName());
+            }
+
+            @Override
+            public void onScoreDeleted(File score) {
+                events.add("deleted " + score.getName());
+            }
+        });
+        watcher.start();
+        try {
+            watcher.onOverflow(musicFolder.toPath().toAbsolutePath().normalize());
+        } finally {
+            watcher.stop();
+        }
+
+        // the unchanged score keeps its plans
+        assertEquals(new TreeSet<>(events), new TreeSet<>(Arrays.asList("changed added.xml", "changed edited.xml", "deleted deleted.xml")));
+    }
+
+    private static LibraryWatcher createWatcher(File musicFolder, File configFolder) {
+        // the catalog only gets to see the empty temp folder
+        return createWatcher(musicFolder, configFolder, new MusicCatalog() {
+            @Override
+            public void onScoreChanged(File score) {
+            }
+
+            @Override
+            public void onScoreDeleted(File score) {
+            }
+        });
+    }
+
+    private static LibraryWatcher createWatcher(File musicFolder, File configFolder, MusicCatalog musicCatalog) {
+        ConfigRepository configRepository = new ConfigRepository();
+        // the player service listens too
+        PlayerService playerService = new PlayerService(new GuitarPlayer(new NoOpController(), configRepository),
+                configRepository, musicCatalog);
+        playerService.MUSIC_FOLDER = musicFolder.getPath() + "/";
+        playerService.postConstruct();
+        LibraryWatcher watcher = new LibraryWatcher(playerService, musicCatalog);
+        watcher.MUSIC_FOLDER = musicFolder.getPath();
+        watcher.CONFIG_FOLDER = configFolder.getPath();
+        return watcher;
+    }
+
+    /**
+     * Writing a file can be reported as a create and several modifications, so other events are skipped.
+     *
+     * @return the expected event, null when it didn't come
+     */
+    private static String waitFor(BlockingQueue<String> events, String expected) throws InterruptedException {
+        String event;
+        do {
+            event = events.poll(20, TimeUnit.SECONDS);
+        } while (event != null && !event.equals(expected));
+        return event;
+    }
+
+    private static void write(File file) throws IOException {
+        Files.write(file.toPath(), "<a/>".getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,30 @@
+package nl.guitar;
+
+import nl.guitar.controlers.NoOpController;
+import nl.guitar.data.ConfigRepository;
+import nl.guitar.data.MusicCatalog;
+import nl.guitar.domain.WarmupStatus;
+import nl.guitar.player.GuitarPlayer;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+public class PlanWarmupTest {
+
+    @Test
+    public void testMissingMusicFolderWarmsUpNothing() {
+        ConfigRepository configRepository = new ConfigRepository();
+        PlayerService playerService = new PlayerService(new GuitarPlayer(new NoOpController(), configRepository),
+                configRepository, new MusicCatalog());
+        playerService.MUSIC_FOLDER = "./no-such-folder/";
+        PlanWarmup warmup = new PlanWarmup(playerService);
+
+        warmup.start();
+
+        WarmupStatus status = warmup.getStatus();
+        assertFalse(status.running);
+        assertEquals(status.total, 0);
+        assertEquals(status.done, 0);
+    }
+}
@@ -3,18 +3,28 @@ package nl.guitar;
 import nl.guitar.controlers.Controller;
 import nl.guitar.controlers.NoOpController;
 import nl.guitar.data.ConfigRepository;
+import nl.guitar.data.MusicCatalog;
+import nl.guitar.data.PlanFile;
+import nl.guitar.data.PlanKey;
 import nl.guitar.player.GuitarPlayer;
 import nl.guitar.player.object.GuitarAction;
 import nl.guitar.player.object.GuitarNote;
+import nl.guitar.util.FileUtil;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Ignore;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 public class PlayerServiceTest {
@@ -30,7 +40,7 @@ public class PlayerServiceTest {
         Controller controller = new NoOpController();
         ConfigRepository configRepository = new ConfigRepository();
         guitarPlayer = new GuitarPlayer(controller, configRepository);
-        playerService = new PlayerService(guitarPlayer, configRepository);
+        playerService = new PlayerService(guitarPlayer, configRepository, new MusicCatalog());
         guitarPlayer.postConstruct();
         playerService.postConstruct();
     }
@@ -174,6 +184,101 @@ public class PlayerServiceTest {
         assertTrue(actions.get(actions.size() -1).timeStamp != 0, "Last timestamp should not be 0");
     }
 
+    @Test
+    public void testScoreChangeDropsItsPlans() throws Exception {
+        File score = copyScore(Files.createTempDirectory("music").toFile());
+        PlayerService service = createPlayerService(score.getParentFile(), new ConfigRepository(), new MusicCatalog());
+        service.precompile(score);
+        assertEquals(getPlanFiles(score).length, 1);
+
+        // only touched, the plan still fits
+        assertTrue(score.setLastModified(score.lastModified() + 10_000));
+        service.onScoreChanged(score);
+        assertEquals(getPlanFiles(score).length, 1);
+
+        edit(score);
+        service.onScoreChanged(score);
+        assertEquals(getPlanFiles(score).length, 0);
+    }
+
+    @Test
+    public void testScoreChangeBeforeFirstCompileDropsItsPlans() throws Exception {
+        File score = copyScore(Files.createTempDirectory("music").toFile());
+        createPlayerService(score.getParentFile(), new ConfigRepository(), new MusicCatalog()).precompile(score);
+        String indexedHash = FileUtil.toSHA1(score);
+        // started again, only the catalog still knows what the score was before the edit
+        PlayerService restarted = createPlayerService(score.getParentFile(), new ConfigRepository(), new MusicCatalog() {
+            @Override
+            public String getIndexedHash(File file) {
+                return indexedHash;
+            }
+        });
+        assertEquals(getPlanFiles(score).length, 1);
+
+        edit(score);
+        restarted.onScoreChanged(score);
+        assertEquals(getPlanFiles(score).length, 0);
+    }
+
+    @Test
+    public void testStartupDropsPlansOfChangedScores() throws Exception {
+        File score = copyScore(Files.createTempDirectory("music").toFile());
+        ConfigRepository configRepository = new ConfigRepository();
+        createPlayerService(score.getParentFile(), configRepository, new MusicCatalog()).precompile(score);
+        File orphan = new File(score.getParentFile(),
+                new PlanKey("0000", "DropDTuning", configRepository.getConfigFingerprint()).toFileName());
+        Files.copy(getPlanFiles(score)[0].toPath(), orphan.toPath());
+
+        createPlayerService(score.getParentFile(), configRepository, new MusicCatalog());
+
+        assertEquals(getPlanFiles(score).length, 1);
+        assertFalse(orphan.exists());
+    }
+
+    @Test
+    public void testConfigChangeDropsPlansOfOtherConfigs() throws Exception {
+        File score = copyScore(Files.createTempDirectory("music").toFile());
+        String[] fingerprint = { "0123456789abcdef" };
+        ConfigRepository configRepository = new ConfigRepository() {
+            @Override
+            public String getConfigFingerprint() {
+                return fingerprint[0];
+            }
+        };
+        PlayerService service = createPlayerService(score.getParentFile(), configRepository, new MusicCatalog());
+        service.precompile(score);
+        assertEquals(getPlanFiles(score).length, 1);
+
+        service.onConfigChanged();
+        assertEquals(getPlanFiles(score).length, 1);
+
+        fingerprint[0] = "fedcba9876543210";
+        service.onConfigChanged();
+        assertEquals(getPlanFiles(score).length, 0);
+    }
+
+    private static PlayerService createPlayerService(File folder, ConfigRepository configRepository, MusicCatalog musicCatalog) {
+        PlayerService service = new PlayerService(new GuitarPlayer(new NoOpController(), configRepository), configRepository, musicCatalog);
+        service.MUSIC_FOLDER = folder.getPath() + "/";
+        service.DTD_FOLDER = DTD_FOLDER_TEST;
+        service.postConstruct();
+        return service;
+    }
+
+    private static File copyScore(File folder) throws IOException {
+        File score = new File(folder, "two_notes_same_time.xml");
+        Files.copy(new File(TEST_MUSIC_FOLDER, score.getName()).toPath(), score.toPath());
+        return score;
+    }
+
+    private static void edit(File score) throws IOException {
+        Files.write(score.toPath(), "<!-- edited -->\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private static File[] getPlanFiles(File score) {
+        return score.getParentFile().listFiles(f -> f.getName().endsWith(PlanFile.EXTENSION));
+    }
+
     private List<GuitarNote> getPlayableNotes(List<GuitarAction> actions) {
         return actions.stream().flatMap(a -> a.notesToPlay.stream()).filter(GuitarNote::isHit).collect(Collectors.toList());
     }
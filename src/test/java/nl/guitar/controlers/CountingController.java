@@ -0,0 +1,13 @@
+package nl.guitar.controlers;
+
+/**
+ * Counts the servo writes that reach it, for tests that check which servos had to move.
+ */
+public class CountingController extends NoOpController {
+    public int writes;
+
+    @Override
+    public void setServoPulse(int boardNumber, short port, float v) {
+        writes++;
+    }
+}
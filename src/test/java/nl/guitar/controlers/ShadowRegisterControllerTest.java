@@ -0,0 +1,51 @@
+package nl.guitar.controlers;
+
+import nl.guitar.domain.ServoWriteStats;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ShadowRegisterControllerTest {
+
+    @Test
+    public void testSuppressesUnchangedWrites() {
+        CountingController counting = new CountingController();
+        ShadowRegisterController controller = new ShadowRegisterController(counting);
+
+        controller.setServoPulse(1, (short) 3, 1.5f);
+        controller.setServoPulse(1, (short) 3, 1.5f);
+        controller.setServoPulse(1, (short) 3, 1.6f);
+        controller.setServoPulse(1, (short) 4, 1.6f);
+
+        assertEquals(counting.writes, 3);
+        assertEquals(controller.getServoPulse(1, (short) 3), 1.6f);
+        ServoWriteStats stats = controller.getWriteStats();
+        assertEquals(stats.issued, 3);
+        assertEquals(stats.suppressed, 1);
+    }
+
+    @Test
+    public void testForgetWritesAgain() {
+        CountingController counting = new CountingController();
+        ShadowRegisterController controller = new ShadowRegisterController(counting);
+
+        controller.setServoPulse(0, (short) 0, 1.5f);
+        controller.forget();
+        controller.setServoPulse(0, (short) 0, 1.5f);
+
+        assertEquals(counting.writes, 2);
+    }
+
+    @Test
+    public void testUnknownServosAreAlwaysWritten() {
+        CountingController counting = new CountingController();
+        ShadowRegisterController controller = new ShadowRegisterController(counting);
+
+        controller.setServoPulse(ShadowRegisterController.BOARDS, (short) 0, 1.5f);
+        controller.setServoPulse(ShadowRegisterController.BOARDS, (short) 0, 1.5f);
+
+        assertEquals(counting.writes, 2);
+        assertTrue(Float.isNaN(controller.getServoPulse(ShadowRegisterController.BOARDS, (short) 0)));
+    }
+}
@@ -0,0 +1,71 @@
+package nl.guitar.controlers;
+
+import nl.guitar.data.ConfigRepository;
+import nl.guitar.domain.FredConfig;
+import nl.guitar.domain.PlectrumConfig;
+import nl.guitar.domain.SimulationReport;
+import nl.guitar.domain.TimingViolation;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+public class SimulationControllerTest {
+    private final ConfigRepository configRepository = new ConfigRepository();
+    private final List<PlectrumConfig> plectrumConfig = configRepository.loadPlectrumConfig();
+    private final List<List<FredConfig>> fredConfig = configRepository.loadFredConfig();
+
+    @Test
+    public void testWaitingMovesTheVirtualClock() {
+        SimulationController controller = new SimulationController(plectrumConfig, fredConfig);
+        controller.start(100);
+        assertEquals(controller.currentTimestamp(), -100);
+
+        controller.waitUntilTimestamp(250);
+        controller.waitMilliseconds(10);
+        assertEquals(controller.currentTimestamp(), 260);
+        controller.waitUntilTimestamp(260);
+        assertEquals(controller.currentTimestampMicros(), 261_000);
+    }
+
+    @Test
+    public void testStrikeBeforeFretSettles() {
+        SimulationController controller = new SimulationController(plectrumConfig, fredConfig);
+        PlectrumConfig string = plectrumConfig.get(0);
+        FredConfig fret = fredConfig.get(0).get(0);
+        controller.start(0);
+        controller.setServoPulse(fret.address, fret.port, fret.free);
+        controller.setServoPulse(string.adressHeight, string.portHeight, string.soft);
+        controller.setServoPulse(string.adressPlectrum, string.portPlectrum, string.up);
+
+        controller.waitUntilTimestamp(100);
+        controller.setServoPulse(fret.address, fret.port, fret.push);
+        controller.waitUntilTimestamp(110);
+        controller.setServoPulse(string.adressPlectrum, string.portPlectrum, string.down);
+
+        SimulationReport report = controller.getReport();
+        assertEquals(report.violations, 1);
+        TimingViolation violation = report.firstViolations.get(0);
+        assertEquals(violation.kind, TimingViolation.Kind.FRET_NOT_SETTLED);
+        assertEquals(violation.string, 0);
+        assertEquals(violation.time, 110);
+        long travel = (long) (Math.abs(fret.push - fret.free) * SimulationController.SERVO_MICROS_PER_PULSE);
+        assertEquals(violation.shortByMicros, travel - 10_000);
+    }
+
+    @Test
+    public void testLiftedPlectrumIsNoStrike() {
+        SimulationController controller = new SimulationController(plectrumConfig, fredConfig);
+        PlectrumConfig string = plectrumConfig.get(0);
+        FredConfig fret = fredConfig.get(0).get(0);
+        controller.start(0);
+        controller.setServoPulse(string.adressHeight, string.portHeight, string.free);
+        controller.setServoPulse(fret.address, fret.port, fret.free);
+        controller.setServoPulse(fret.address, fret.port, fret.push);
+        controller.setServoPulse(string.adressPlectrum, string.portPlectrum, string.up);
+
+        assertEquals(controller.getReport().violations, 0);
+        assertEquals(controller.getReport().servoWrites, 4);
+    }
+}
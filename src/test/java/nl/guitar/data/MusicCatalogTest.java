@@ -0,0 +1,123 @@
+package nl.guitar.data;
+
+import nl.guitar.domain.CatalogEntry;
+import nl.guitar.domain.CatalogPage;
+import nl.guitar.player.object.GuitarAction;
+import nl.guitar.player.object.GuitarNote;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class MusicCatalogTest {
+
+    @Test
+    public void testScansFolderAndPages() throws IOException {
+        File folder = Files.createTempDirectory("catalog").toFile();
+        writeScore(folder, "beta.xml", "<b/>");
+        writeScore(folder, "alpha.xml", "<a/>");
+        writeScore(folder, "gamma.xml", "<c/>");
+
+        MusicCatalog catalog = createCatalog(folder);
+
+        assertEquals(catalog.getNames(), Arrays.asList("alpha", "beta", "gamma"));
+        CatalogPage page = catalog.getPage(null, 1, 1);
+        assertEquals(page.total, 3);
+        assertEquals(page.entries.size(), 1);
+        assertEquals(page.entries.get(0).name, "beta");
+        CatalogPage filtered = catalog.getPage("AM", 0, 10);
+        assertEquals(filtered.total, 1);
+        assertEquals(filtered.entries.get(0).name, "gamma");
+        assertTrue(new File(folder, MusicCatalog.CATALOG_FILE).exists());
+    }
+
+    @Test
+    public void testKeepsPlanNumbersAcrossRestart() throws IOException {
+        File folder = Files.createTempDirectory("catalog").toFile();
+        File score = writeScore(folder, "song.xml", "<song/>");
+        MusicCatalog catalog = createCatalog(folder);
+
+        catalog.updatePlan(score, plan());
+
+        CatalogEntry entry = createCatalog(folder).getEntry("song");
+        assertEquals(entry.actionCount, Integer.valueOf(2));
+        assertEquals(entry.durationMs, Long.valueOf(1500));
+        assertEquals(entry.lowestNote, Integer.valueOf(40));
+        assertEquals(entry.highestNote, Integer.valueOf(64));
+        assertEquals(entry.errors, Integer.valueOf(1));
+        assertEquals(catalog.getHash(score), entry.hash);
+    }
+
+    @Test
+    public void testFollowsChanges() throws IOException {
+        File folder = Files.createTempDirectory("catalog").toFile();
+        File score = writeScore(folder, "song.xml", "<song/>");
+        MusicCatalog catalog = createCatalog(folder);
+        catalog.updatePlan(score, plan());
+        String oldHash = catalog.getEntry("song").hash;
+
+        writeScore(folder, "song.xml", "<song version='2'/>");
+        catalog.onScoreChanged(score);
+        CatalogEntry entry = catalog.getEntry("song");
+        assertTrue(!oldHash.equals(entry.hash));
+        assertNull(entry.actionCount);
+
+        assertTrue(score.delete());
+        catalog.onScoreDeleted(score);
+        assertNull(catalog.getEntry("song"));
+        assertNull(createCatalog(folder).getEntry("song"));
+    }
+
+    @Test
+    public void testListsCompressedScores() throws IOException {
+        File folder = Files.createTempDirectory("catalog").toFile();
+        writeScore(folder, "alpha.xml", "<a/>");
+        writeScore(folder, "beta.mxl", "zip");
+        writeScore(folder, "notes.txt", "not a score");
+
+        MusicCatalog catalog = createCatalog(folder);
+
+        assertEquals(catalog.getNames(), Arrays.asList("alpha", "beta"));
+        assertEquals(catalog.getEntry("beta").fileName, "beta.mxl");
+        assertTrue(MusicCatalog.isScore("beta.mxl"));
+        assertTrue(!MusicCatalog.isScore("notes.txt"));
+    }
+
+    private static MusicCatalog createCatalog(File folder) {
+        MusicCatalog catalog = new MusicCatalog();
+        catalog.MUSIC_FOLDER = folder.getPath() + "/";
+        catalog.postConstruct();
+        return catalog;
+    }
+
+    private static File writeScore(File folder, String name, String content) throws IOException {
+        File score = new File(folder, name);
+        Files.write(score.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return score;
+    }
+
+    private static List<GuitarAction> plan() {
+        List<GuitarAction> actions = new ArrayList<>();
+        GuitarAction first = new GuitarAction();
+        first.timeStamp = 0;
+        first.timeTillNextNote = 1000;
+        first.notesToPlay.add(new GuitarNote((short) 0, 0, true, 40));
+        actions.add(first);
+        GuitarAction second = new GuitarAction();
+        second.timeStamp = 1000;
+        second.timeTillNextNote = 500;
+        second.error = "Not playable";
+        second.notesToPlay.add(new GuitarNote((short) 5, 0, true, 64));
+        actions.add(second);
+        return actions;
+    }
+}
@@ -0,0 +1,88 @@
+package nl.guitar.data;
+
+import nl.guitar.domain.CacheStats;
+import nl.guitar.player.object.GuitarAction;
+import nl.guitar.player.object.GuitarNote;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+public class PlanCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        PlanCache cache = new PlanCache(2, 1000);
+        PlanKey a = new PlanKey("a", "DropDTuning", "0123456789");
+        PlanKey b = new PlanKey("b", "DropDTuning", "0123456789");
+        PlanKey c = new PlanKey("c", "DropDTuning", "0123456789");
+        cache.put(a, plan(1));
+        cache.put(b, plan(1));
+        assertNotNull(cache.get(a));
+        cache.put(c, plan(1));
+
+        assertNull(cache.get(b));
+        assertNotNull(cache.get(a));
+        assertNotNull(cache.get(c));
+        CacheStats stats = cache.getStats();
+        assertEquals(stats.hits, 3);
+        assertEquals(stats.misses, 1);
+        assertEquals(stats.evictions, 1);
+    }
+
+    @Test
+    public void testEvictsOnNoteCount() {
+        PlanCache cache = new PlanCache(10, 5);
+        PlanKey a = new PlanKey("a", "DropDTuning", "0123456789");
+        PlanKey b = new PlanKey("b", "DropDTuning", "0123456789");
+        cache.put(a, plan(3));
+        cache.put(b, plan(3));
+
+        assertNull(cache.get(a));
+        assertNotNull(cache.get(b));
+        assertEquals(cache.getStats().notes, 3);
+    }
+
+    @Test
+    public void testConfigIsPartOfKey() {
+        PlanCache cache = new PlanCache(10, 1000);
+        cache.put(new PlanKey("a", "DropDTuning", "0123456789"), plan(1));
+
+        assertNull(cache.get(new PlanKey("a", "DropDTuning", "9876543210")));
+        assertNull(cache.get(new PlanKey("a", "DefaultTuning", "0123456789")));
+    }
+
+    @Test
+    public void testInvalidate() {
+        PlanCache cache = new PlanCache(10, 1000);
+        PlanKey a = new PlanKey("a", "DropDTuning", "0123456789");
+        PlanKey b = new PlanKey("b", "DropDTuning", "0123456789");
+        PlanKey c = new PlanKey("a", "DropDTuning", "9876543210");
+        cache.put(a, plan(1));
+        cache.put(b, plan(2));
+        cache.put(c, plan(4));
+
+        assertEquals(cache.invalidate(key -> key.getScoreHash().equals("a")), 2);
+        assertEquals(cache.invalidate(key -> key.getScoreHash().equals("a")), 0);
+
+        assertNull(cache.get(a));
+        assertNull(cache.get(c));
+        assertNotNull(cache.get(b));
+        assertEquals(cache.getStats().entries, 1);
+        assertEquals(cache.getStats().notes, 2);
+    }
+
+    private static List<GuitarAction> plan(int notes) {
+        List<GuitarAction> plan = new ArrayList<>();
+        for (int i = 0; i < notes; i++) {
+            GuitarAction action = new GuitarAction();
+            action.notesToPlay.add(new GuitarNote((short) 0, i, true, 28 + i));
+            plan.add(action);
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,61 @@
+package nl.guitar.data;
+
+import nl.guitar.player.object.GuitarAction;
+import nl.guitar.player.object.GuitarNote;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class PlanFileTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<GuitarAction> actions = new ArrayList<>();
+        GuitarAction first = new GuitarAction();
+        first.instructionNumber = 0;
+        first.timeStamp = 0;
+        first.timeTillNextNote = 500;
+        first.notesToPlay.add(new GuitarNote((short) 0, 3, true, 31));
+        first.notesToPlay.add(new GuitarNote((short) -1, 0, false, 90));
+        first.error = "Unable to play note value 90";
+        actions.add(first);
+        GuitarAction second = new GuitarAction();
+        second.instructionNumber = 1;
+        second.timeStamp = 500;
+        second.timeTillNextNote = 250;
+        second.beat = 1;
+        second.beats = 0.5;
+        second.notesToPlay.add(new GuitarNote((short) 5, 12, true, 64));
+        actions.add(second);
+
+        File file = File.createTempFile("plan", PlanFile.EXTENSION);
+        file.deleteOnExit();
+        PlanFile.write(file, actions);
+        List<GuitarAction> result = PlanFile.read(file);
+
+        assertEquals(result.size(), 2);
+        assertEquals(result.get(0).error, first.error);
+        assertNull(result.get(1).error);
+        assertEquals(result.get(1).timeStamp, 500);
+        assertEquals(result.get(1).timeTillNextNote, 250);
+        assertEquals(result.get(1).beat, 1d);
+        assertEquals(result.get(1).beats, 0.5d);
+        assertEquals(result.get(0).notesToPlay.size(), 2);
+        GuitarNote note = result.get(0).notesToPlay.get(0);
+        assertEquals(note.getStringNumber(), 0);
+        assertEquals(note.getFred(), 3);
+        assertEquals(note.getNoteValue(), 31);
+        assertEquals(note.isHit(), true);
+        assertEquals(result.get(0).notesToPlay.get(1).isHit(), false);
+    }
+
+    @Test
+    public void testMissingFile() throws Exception {
+        assertNull(PlanFile.read(new File("does-not-exist" + PlanFile.EXTENSION)));
+    }
+}
@@ -0,0 +1,31 @@
+package nl.guitar.data;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class PlanKeyTest {
+
+    @Test
+    public void testFileNameRoundTrip() {
+        PlanKey key = new PlanKey("abc123", "DropDTuning-planned", "0123456789abcdef");
+        File planFile = new File(key.toFileName());
+
+        assertEquals(PlanKey.getConfigTag(planFile), "01234567");
+        assertEquals(PlanKey.getConfigTag(planFile), PlanKey.getConfigTag(key.getConfigFingerprint()));
+        assertEquals(PlanKey.getScoreHash(planFile), "abc123");
+    }
+
+    @Test
+    public void testForeignFileNames() {
+        assertNull(PlanKey.getConfigTag(new File("catalog.json")));
+        assertNull(PlanKey.getConfigTag(new File("nodash" + PlanFile.EXTENSION)));
+        assertNull(PlanKey.getConfigTag(new File("abc-DropDTuning-" + PlanFile.EXTENSION)));
+        assertNull(PlanKey.getScoreHash(new File("nodash" + PlanFile.EXTENSION)));
+        assertNull(PlanKey.getScoreHash(new File("-DropDTuning-01234567" + PlanFile.EXTENSION)));
+        assertNull(PlanKey.getScoreHash(new File("abc-DropDTuning-01234567.xml")));
+    }
+}
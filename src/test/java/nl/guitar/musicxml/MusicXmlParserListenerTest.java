@@ -1,5 +1,160 @@
 package nl.guitar.musicxml;
 
+import nl.guitar.controlers.NoOpController;
+import nl.guitar.data.ConfigRepository;
+import nl.guitar.player.GuitarPlayer;
+import nl.guitar.player.object.GuitarAction;
+import nl.guitar.player.tuning.DropDTuning;
+import org.jfugue.integration.MusicXmlParser;
+import org.jfugue.parser.ParserListenerAdapter;
+import org.jfugue.theory.Note;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
 public class MusicXmlParserListenerTest {
 
+    @Test
+    public void testRepeatedChordsComeFromTheMemo() {
+        ConfigRepository configRepository = new ConfigRepository();
+        MusicXmlParserListener listener = new MusicXmlParserListener(
+                new GuitarPlayer(new NoOpController(), configRepository), new DropDTuning(configRepository));
+
+        for (int i = 0; i < 4; i++) {
+            chord(listener, 40, 45, 50);
+            chord(listener, 38, 43);
+        }
+        listener.afterParsingFinished();
+
+        List<GuitarAction> actions = listener.guitarActions();
+        assertEquals(actions.size(), 8);
+        for (int i = 2; i < actions.size(); i++) {
+            assertEquals(actions.get(i).notesToPlay, actions.get(i - 2).notesToPlay);
+        }
+        assertEquals(listener.getChordMemo().getMisses(), 2);
+        assertEquals(listener.getChordMemo().getHits(), 6);
+    }
+
+    @Test
+    public void testRepeatedChordWithANoteOutOfRange() {
+        ConfigRepository configRepository = new ConfigRepository();
+        MusicXmlParserListener listener = new MusicXmlParserListener(
+                new GuitarPlayer(new NoOpController(), configRepository), new DropDTuning(configRepository));
+
+        for (int i = 0; i < 3; i++) {
+            chord(listener, 20, 40, 50);
+            chord(listener, 38, 43);
+        }
+        listener.afterParsingFinished();
+
+        List<GuitarAction> actions = listener.guitarActions();
+        assertEquals(listener.getChordMemo().getHits(), 4);
+        GuitarAction first = actions.get(0);
+        assertFalse(first.notesToPlay.get(0).isHit());
+        assertTrue(first.notesToPlay.get(1).isHit());
+        assertTrue(first.notesToPlay.get(2).isHit());
+        for (int i = 2; i < actions.size(); i++) {
+            assertEquals(actions.get(i).notesToPlay, actions.get(i - 2).notesToPlay);
+            for (int j = 0; j < actions.get(i).notesToPlay.size(); j++) {
+                assertEquals(actions.get(i).notesToPlay.get(j).isHit(), actions.get(i - 2).notesToPlay.get(j).isHit());
+            }
+            String error = actions.get(i - 2).error;
+            assertEquals(actions.get(i).error, error == null ? null : error.replace("@" + (i - 2), "@" + i));
+        }
+    }
+
+    @Test
+    public void testPlannedChordWithANoteOutOfRange() {
+        for (boolean planStrings : new boolean[] {false, true}) {
+            ConfigRepository configRepository = new ConfigRepository();
+            MusicXmlParserListener listener = new MusicXmlParserListener(
+                    new GuitarPlayer(new NoOpController(), configRepository), new DropDTuning(configRepository), null, planStrings);
+
+            // 20 is below the lowest string
+            chord(listener, 20, 40, 50);
+            listener.afterParsingFinished();
+
+            GuitarAction action = listener.guitarActions().get(0);
+            assertEquals(action.notesToPlay.size(), 3);
+            assertFalse(action.notesToPlay.get(0).isHit());
+            assertTrue(action.notesToPlay.get(1).isHit(), "planned " + planStrings);
+            assertTrue(action.notesToPlay.get(2).isHit(), "planned " + planStrings);
+            assertTrue(action.error.contains("note value 20 "), action.error);
+        }
+    }
+
+    @Test
+    public void testInterruptedCompileStops() {
+        for (boolean planStrings : new boolean[] {false, true}) {
+            ConfigRepository configRepository = new ConfigRepository();
+            MusicXmlParserListener listener = new MusicXmlParserListener(
+                    new GuitarPlayer(new NoOpController(), configRepository), new DropDTuning(configRepository), null, planStrings);
+
+            chord(listener, 40, 45, 50);
+            Thread.currentThread().interrupt();
+            try {
+                listener.onBarLineParsed(0);
+                fail("planned " + planStrings);
+            } catch (CancellationException e) {
+                // expected
+            } finally {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    @Test
+    public void testNoteEventsCompileLikeNotes() throws Exception {
+        for (boolean planStrings : new boolean[] {false, true}) {
+            List<GuitarAction> fromNoteEvents = compile(planStrings, false);
+            List<GuitarAction> fromNotes = compile(planStrings, true);
+
+            assertEquals(fromNoteEvents.size(), fromNotes.size());
+            for (int i = 0; i < fromNotes.size(); i++) {
+                assertEquals(fromNoteEvents.get(i).timeStamp, fromNotes.get(i).timeStamp);
+                assertEquals(fromNoteEvents.get(i).notesToPlay, fromNotes.get(i).notesToPlay);
+            }
+        }
+    }
+
+    private static List<GuitarAction> compile(boolean planStrings, boolean withNotes) throws Exception {
+        ConfigRepository configRepository = new ConfigRepository();
+        MusicXmlParserListener listener = new MusicXmlParserListener(
+                new GuitarPlayer(new NoOpController(), configRepository), new DropDTuning(configRepository), null, planStrings);
+        MusicXmlParser parser = new MusicXmlParser(new LocalDtdResolver(new File("./musicxml")));
+        if (withNotes) {
+            // a listener that takes Notes, so the parser builds them
+            parser.addParserListener(new ParserListenerAdapter() {
+                @Override
+                public void onNoteParsed(Note note) {
+                    listener.onNoteParsed(note);
+                }
+
+                @Override
+                public void onTempoChanged(int tempoBPM) {
+                    listener.onTempoChanged(tempoBPM);
+                }
+            });
+        } else {
+            parser.addParserListener(listener);
+        }
+        parser.parse(new File("music/Dust-all.xml"));
+        listener.afterParsingFinished();
+        return listener.guitarActions();
+    }
+
+    private static void chord(MusicXmlParserListener listener, int... values) {
+        for (int i = 0; i < values.length; i++) {
+            Note note = new Note(values[i], 0.25);
+            note.setHarmonicNote(i > 0);
+            listener.onNoteParsed(note);
+        }
+    }
 }
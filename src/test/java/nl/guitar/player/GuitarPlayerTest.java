@@ -1,4 +1,193 @@
 package nl.guitar.player;
 
+import nl.guitar.controlers.ConsoleController;
+import nl.guitar.controlers.CountingController;
+import nl.guitar.controlers.NoOpController;
+import nl.guitar.controlers.ShadowRegisterController;
+import nl.guitar.data.ConfigRepository;
+import nl.guitar.domain.PlayabilityReport;
+import nl.guitar.domain.SimulationReport;
+import nl.guitar.player.object.GuitarAction;
+import nl.guitar.player.object.GuitarNote;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static nl.guitar.player.TimelineCompilerTest.action;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
 public class GuitarPlayerTest {
+
+    @Test(expectedExceptions = PlaybackUnderrunException.class, timeOut = 5000)
+    public void testStreamUnderrun() throws Exception {
+        GuitarPlayer guitarPlayer = new GuitarPlayer(new ConsoleController(), new ConfigRepository());
+        ActionStream actionStream = new ActionStream();
+        GuitarAction action = new GuitarAction();
+        action.timeTillNextNote = 100;
+        action.notesToPlay.add(new GuitarNote((short) 0, 0, true, 26));
+        actionStream.publish(action);
+
+        guitarPlayer.playStream(actionStream, 0);
+    }
+
+    @Test(timeOut = 10000)
+    public void testStreamWaitsOutARest() throws Exception {
+        GuitarPlayer guitarPlayer = new GuitarPlayer(new ConsoleController(), new ConfigRepository());
+        ActionStream actionStream = new ActionStream();
+        actionStream.publish(action(0, 0, 100, 1));
+        // a rest until 2000ms, the next action only arrives long after the first one ended
+        actionStream.compiledUntil(2000);
+        Thread compiler = new Thread(() -> {
+            try {
+                Thread.sleep(1500);
+                actionStream.publish(action(1, 2000, 100, 2));
+                actionStream.compiledUntil(2100);
+                actionStream.finish();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        compiler.start();
+
+        assertTrue(guitarPlayer.playStream(actionStream, 0));
+        assertEquals(guitarPlayer.getLastPlayedInstruction(), 1);
+        compiler.join();
+    }
+
+    @Test
+    public void testSeekOnlyMovesServosThatDiffer() {
+        CountingController counting = new CountingController();
+        GuitarPlayer guitarPlayer = new GuitarPlayer(new ShadowRegisterController(counting), new ConfigRepository());
+        List<GuitarAction> actions = Arrays.asList(action(0, 1000, 100, 2), action(1, 1100, 100, 3),
+                action(2, 1200, 100, 5));
+
+        assertTrue(guitarPlayer.playActions(actions));
+        assertEquals(guitarPlayer.getLastPlayedInstruction(), 2);
+
+        // everything is already where the whole plan left it
+        counting.writes = 0;
+        guitarPlayer.playFrom(actions, actions.size());
+        assertEquals(counting.writes, 0);
+    }
+
+    @Test
+    public void testSeekRebuildsFretState() {
+        CountingController counting = new CountingController();
+        GuitarPlayer guitarPlayer = new GuitarPlayer(new ShadowRegisterController(counting), new ConfigRepository());
+        List<GuitarAction> actions = Arrays.asList(action(0, 1000, 100, 2), action(1, 1100, 100, 3),
+                action(2, 1200, 100, 3));
+
+        guitarPlayer.playFrom(actions, 2);
+        assertEquals(guitarPlayer.getLastPlayedInstruction(), 2);
+
+        // fret 3 was pressed by the seek, so playing the last action only moves the plectrum
+        counting.writes = 0;
+        guitarPlayer.playFrom(actions, 2);
+        assertEquals(counting.writes, 4);
+    }
+
+    @Test
+    public void testStoppedFretsAreReleasedUnlessPlayingGoesOn() throws Exception {
+        CountingController counting = new CountingController();
+        GuitarPlayer guitarPlayer = new GuitarPlayer(new ShadowRegisterController(counting), new ConfigRepository());
+        List<GuitarAction> actions = Arrays.asList(action(0, 1000, 100, 2), action(1, 1100, 100, 3));
+        guitarPlayer.playActions(actions);
+
+        // playing on before the delay finds the fret still pressed
+        guitarPlayer.releaseFredsAfter(300);
+        counting.writes = 0;
+        guitarPlayer.playFrom(actions, actions.size());
+        Thread.sleep(600);
+        guitarPlayer.playFrom(actions, actions.size());
+        assertEquals(counting.writes, 0);
+
+        // after it the fret was released and is pressed again
+        guitarPlayer.releaseFredsAfter(0);
+        Thread.sleep(300);
+        guitarPlayer.playFrom(actions, actions.size());
+        assertEquals(counting.writes, 2);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNotFasterThanMaxSpeed() {
+        GuitarPlayer guitarPlayer = new GuitarPlayer(new NoOpController(), new ConfigRepository());
+        guitarPlayer.setSpeed(1.5);
+        assertEquals(guitarPlayer.getSpeed(), 1.5);
+        guitarPlayer.setSpeed(2.5);
+    }
+
+    @Test
+    public void testSimulateFasterThanTheScore() {
+        GuitarPlayer guitarPlayer = new GuitarPlayer(new NoOpController(), new ConfigRepository());
+        List<GuitarAction> actions = new ArrayList<>();
+        // a fret change on the low string every 300ms leaves the string more than enough time at 150%
+        for (int i = 0; i < 20; i++) {
+            actions.add(action(i, i * 300L, 300, 3 + i % 2));
+        }
+        assertTrue(PreparePlanner.maxSpeed(actions, guitarPlayer.loadMinStringGaps()) >= 1.5);
+
+        SimulationReport report = guitarPlayer.simulate(actions, 1.5);
+
+        assertEquals(report.violations, 0, report.toString());
+        assertEquals(report.durationMs, 19 * 200L, 1);
+    }
+
+    @Test
+    public void testSpeedIsCappedByTheStringGaps() {
+        GuitarPlayer guitarPlayer = new GuitarPlayer(new NoOpController(), new ConfigRepository());
+        List<GuitarAction> actions = Arrays.asList(action(0, 0, 200, 3), action(1, 200, 200, 4),
+                action(2, 400, 200, 3));
+        double maxSpeed = PreparePlanner.maxSpeed(actions, guitarPlayer.loadMinStringGaps());
+        assertTrue(maxSpeed < 1.5, "max speed " + maxSpeed);
+
+        guitarPlayer.setSpeed(1.5);
+        guitarPlayer.playActions(actions);
+
+        assertEquals(guitarPlayer.getSpeed(), maxSpeed);
+        assertEquals(guitarPlayer.simulate(actions, maxSpeed).violations, 0);
+    }
+
+    @Test(timeOut = 5000)
+    public void testSimulateFiveMinutesQuickly() {
+        GuitarPlayer guitarPlayer = new GuitarPlayer(new NoOpController(), new ConfigRepository());
+        List<GuitarAction> actions = new ArrayList<>();
+        // eighth notes at 120 bpm for five minutes, walking over the first frets of the low string
+        for (int i = 0; i < 2400; i++) {
+            actions.add(action(i, i * 125L, 125, i % 4));
+        }
+
+        SimulationReport report = guitarPlayer.simulate(actions);
+
+        assertEquals(report.durationMs, 2399 * 125L);
+        assertTrue(report.servoWrites > 2400 * 3);
+    }
+
+    @Test
+    public void testSimulateFindsTooFastFretChanges() {
+        GuitarPlayer guitarPlayer = new GuitarPlayer(new NoOpController(), new ConfigRepository());
+        List<GuitarAction> slow = Arrays.asList(action(0, 0, 500, 1), action(1, 500, 500, 2), action(2, 1000, 500, 1));
+        List<GuitarAction> fast = Arrays.asList(action(0, 0, 70, 1), action(1, 70, 70, 2), action(2, 140, 70, 1));
+
+        assertEquals(guitarPlayer.simulate(slow).violations, 0);
+        assertTrue(guitarPlayer.simulate(fast).violations > 0);
+        // the analysis simulates the timeline it compiled for the servo load
+        assertEquals(guitarPlayer.analyze(fast).simulation.violations, guitarPlayer.simulate(fast).violations);
+    }
+
+    @Test
+    public void testNeededStringGapAgreesWithSimulation() {
+        GuitarPlayer guitarPlayer = new GuitarPlayer(new NoOpController(), new ConfigRepository());
+        long gap = guitarPlayer.analyze(Arrays.asList(action(0, 0, 500, 1))).neededStringGapMs[0];
+
+        // frets 3 and 4 share the servo that travels furthest on the low string, from one push to the other
+        for (long tried : new long[] { gap, gap - 1 }) {
+            List<GuitarAction> actions = Arrays.asList(action(0, 0, tried, 3), action(1, tried, tried, 4),
+                    action(2, 2 * tried, tried, 3));
+            PlayabilityReport report = guitarPlayer.analyze(actions);
+            assertEquals(report.playable, report.simulation.violations == 0, "gap " + tried + ": " + report);
+        }
+    }
 }
@@ -0,0 +1,73 @@
+package nl.guitar.player;
+
+import nl.guitar.domain.LatencyStats;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+        LatencyStats stats = histogram.getStats();
+
+        assertEquals(stats.count, 10000);
+        assertEquals(stats.max, 10000);
+        assertEquals(stats.mean, 5000);
+        assertWithin(stats.p50, 5000);
+        assertWithin(stats.p90, 9000);
+        assertWithin(stats.p99, 9900);
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-3);
+        histogram.record(7);
+        histogram.record(7);
+        histogram.record(40);
+        LatencyStats stats = histogram.getStats();
+
+        assertEquals(stats.early, 1);
+        assertEquals(stats.p50, 7);
+        assertEquals(stats.max, 40);
+        assertEquals(histogram.percentile(1.0), 40);
+    }
+
+    @Test
+    public void testBucketsCoverTheRange() {
+        for (long value : new long[] { 0, 63, 64, 65, 1000, 123456789L, Long.MAX_VALUE }) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(LatencyHistogram.upperBound(bucket) >= value || value > 1L << 41, "value " + value);
+        }
+    }
+
+    @Test(timeOut = 10000)
+    public void testStatsAreReadWhileRecording() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread timing = new Thread(() -> {
+            for (int i = 0; i < 2_000_000; i++) {
+                histogram.record(100);
+            }
+        });
+        timing.start();
+
+        // a count and total from different moments would give another mean
+        while (timing.isAlive()) {
+            LatencyStats stats = histogram.getStats();
+            assertEquals(stats.mean, stats.count == 0 ? 0 : 100);
+            assertEquals(stats.max, stats.count == 0 ? 0 : 100);
+        }
+        timing.join();
+        assertEquals(histogram.getCount(), 2_000_000);
+    }
+
+    private static void assertWithin(long actual, long expected) {
+        assertTrue(Math.abs(actual - expected) <= expected / 32 + 1, "expected about " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,69 @@
+package nl.guitar.player;
+
+import nl.guitar.data.ConfigRepository;
+import nl.guitar.domain.PlayabilityReport;
+import nl.guitar.player.object.GuitarAction;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static nl.guitar.player.TimelineCompilerTest.action;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class PlayabilityAnalyzerTest {
+
+    @Test
+    public void testReport() {
+        PlayabilityReport report = analyze(action(0, 0, 200, 2), action(1, 200, 100, 5), action(2, 300, 200, 2));
+
+        assertEquals(report.actions, 3);
+        assertEquals(report.errors, 0);
+        assertEquals(report.lowestNote.intValue(), 30);
+        assertEquals(report.highestNote.intValue(), 33);
+        assertEquals(report.shortestNoteMs, 100);
+        assertEquals(report.durationMs, 500);
+        assertEquals(report.minStringGapMs[0], 100);
+        assertEquals(report.minStringGapMs[1], -1);
+        assertTrue(report.neededStringGapMs[0] > 100);
+        // 2 is pressed before the score starts, in its first second released for 5 and pressed again
+        assertEquals(report.maxFretChangesPerSecond, 2);
+        assertTrue(report.busiestBoard >= 0);
+        assertFalse(report.playable);
+    }
+
+    @Test
+    public void testHoldingAFretIsNoChange() {
+        PlayabilityReport report = analyze(action(0, 0, 250, 2), action(1, 250, 250, 2), action(2, 500, 250, 2),
+                action(3, 750, 250, 2));
+
+        assertEquals(report.maxFretChangesPerSecond, 1);
+    }
+
+    @Test
+    public void testNeededGapIsPlayable() {
+        long gap = analyze(action(0, 0, 500, 1)).neededStringGapMs[0];
+        PlayabilityReport report = analyze(action(0, 0, gap, 1), action(1, gap, gap, 2), action(2, 2 * gap, gap, 1));
+
+        assertEquals(report.minStringGapMs[0], gap);
+        assertTrue(report.playable);
+    }
+
+    @Test
+    public void testTooShortGapIsNotPlayable() {
+        GuitarAction error = action(1, 30, 100, 3);
+        error.error = "Unable to play";
+        PlayabilityReport report = analyze(action(0, 0, 30, 2), error);
+
+        assertEquals(report.minStringGapMs[0], 30);
+        assertEquals(report.errorMessages, Arrays.asList("@1: Unable to play"));
+        assertFalse(report.playable);
+    }
+
+    private static PlayabilityReport analyze(GuitarAction... actions) {
+        ConfigRepository configRepository = new ConfigRepository();
+        return new PlayabilityAnalyzer(configRepository.loadPlectrumConfig(), configRepository.loadFredConfig(),
+                new long[] { 16, 16, 16, 16, 16, 16 }).analyze(Arrays.asList(actions));
+    }
+}
@@ -0,0 +1,159 @@
+package nl.guitar.player;
+
+import nl.guitar.controlers.ConsoleController;
+import nl.guitar.controlers.Controller;
+import nl.guitar.controlers.NoOpController;
+import nl.guitar.data.ConfigRepository;
+import nl.guitar.domain.SchedulerStats;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static nl.guitar.player.TimelineCompilerTest.action;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class PlaybackSchedulerTest {
+
+    @Test(timeOut = 5000)
+    public void testWaitsForDeadlineAndReportsLateness() throws Exception {
+        Controller controller = new ConsoleController();
+        ServoTimeline timeline = new ServoTimeline(16);
+        List<Long> hits = new ArrayList<>();
+        PlaybackScheduler scheduler = new PlaybackScheduler(controller, timeline, a -> hits.add(controller.currentTimestamp()));
+        controller.start(0);
+        scheduler.start();
+        timeline.add(100, 0, (short) 0, 1.5f, 0, false);
+        timeline.add(200, 0, (short) 1, 1.5f, 0, true);
+        timeline.addActionPlayed(200, 0);
+        scheduler.wakeUp();
+        timeline.addActionPlayed(400, 1);
+        timeline.finish();
+        scheduler.finish();
+
+        assertEquals(hits.size(), 2);
+        assertTrue(hits.get(0) >= 200, "Hit before its deadline: " + hits);
+        assertTrue(hits.get(1) >= 400, "Hit before its deadline: " + hits);
+        SchedulerStats stats = scheduler.getStats();
+        assertEquals(stats.dispatched, 4);
+        assertEquals(stats.prepare.count, 1);
+        assertEquals(stats.hit.count, 1);
+        assertTrue(stats.hit.max < 100000, stats.toString());
+        assertTrue(stats.hit.p99 <= stats.hit.max, stats.toString());
+    }
+
+    @Test(timeOut = 5000)
+    public void testSpeedStretchesTheTimeline() throws Exception {
+        Controller controller = new ConsoleController();
+        ServoTimeline timeline = new ServoTimeline(16);
+        List<Long> hits = new ArrayList<>();
+        PlaybackScheduler scheduler = new PlaybackScheduler(controller, timeline, a -> hits.add(controller.currentTimestamp()), 0.5);
+        timeline.addActionPlayed(100, 0);
+        timeline.addActionPlayed(300, 1);
+        timeline.finish();
+        controller.start(0);
+        scheduler.start();
+        while (hits.isEmpty()) {
+            Thread.sleep(5);
+        }
+        scheduler.setSpeed(2);
+        scheduler.finish();
+
+        assertEquals(hits.size(), 2);
+        // 100ms of score at half speed
+        assertTrue(hits.get(0) >= 200 && hits.get(0) < 300, "First hit at " + hits);
+        // the remaining 200ms at double speed
+        assertTrue(hits.get(1) >= 300 && hits.get(1) < 400, "Second hit at " + hits);
+    }
+
+    @Test(timeOut = 5000)
+    public void testLeadStaysInControllerTimeFasterThanTheScore() throws Exception {
+        List<Short> ports = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+        Controller controller = new ConsoleController() {
+            @Override
+            public void setServoPulse(int address, short port, float pulse) {
+                ports.add(port);
+                times.add(currentTimestamp());
+            }
+        };
+        ServoTimeline timeline = new ServoTimeline(16);
+        PlaybackScheduler scheduler = new PlaybackScheduler(controller, timeline, a -> { }, 1.5);
+        // a hit at 300 and the fret press 150ms before a hit at 470
+        timeline.add(300, 0, (short) 0, 1.5f, 0, true);
+        timeline.add(320, 150, 0, (short) 1, 1.5f, 1, false);
+        timeline.finish();
+        controller.start(0);
+        scheduler.start();
+        scheduler.finish();
+
+        // at 150% the hits sound at 200 and 313, the press keeps its full 150ms and comes first
+        assertEquals(ports, Arrays.asList((short) 1, (short) 0), "Played at " + times);
+        assertTrue(times.get(0) >= 163 && times.get(0) < 200, "Press at " + times);
+        assertTrue(times.get(1) >= 200 && times.get(1) < 250, "Hit at " + times);
+    }
+
+    @Test(timeOut = 5000)
+    public void testCancelDropsPendingCommands() throws Exception {
+        Controller controller = new ConsoleController();
+        ServoTimeline timeline = new ServoTimeline(16);
+        List<Integer> played = new ArrayList<>();
+        PlaybackScheduler scheduler = new PlaybackScheduler(controller, timeline, played::add);
+        controller.start(0);
+        timeline.addActionPlayed(60000, 0);
+        scheduler.start();
+        scheduler.cancel();
+        scheduler.finish();
+
+        assertTrue(played.isEmpty());
+    }
+
+    @Test
+    public void testPlaybackAllocatesNothing() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ConfigRepository configRepository = new ConfigRepository();
+        ServoTimeline timeline = new ServoTimeline(16);
+        TimelineCompiler compiler = new TimelineCompiler(timeline, configRepository.loadPlectrumConfig(),
+                configRepository.loadFredConfig(), new long[] { 16, 16, 16, 16, 16, 16 }, new int[6], new boolean[6]);
+        for (int i = 0; i < 2000; i++) {
+            compiler.append(action(i, i * 100L, 100, i % 5));
+        }
+        compiler.finish();
+        int[] played = new int[1];
+        Controller controller = new LateController();
+        // warm up, so class loading and compilation don't count
+        for (int i = 0; i < 20; i++) {
+            new PlaybackScheduler(controller, timeline, a -> played[0]++).play();
+        }
+        PlaybackScheduler scheduler = new PlaybackScheduler(controller, timeline, a -> played[0]++);
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        long overhead = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        before = threadMXBean.getThreadAllocatedBytes(threadId);
+        scheduler.play();
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertEquals(played[0], 21 * 2000);
+        assertEquals(allocated, 0, "Bytes allocated while playing " + timeline.size() + " commands");
+        assertEquals(scheduler.getStats().hit.count, 2000);
+    }
+
+    /**
+     * Clock that is always past every command, so nothing waits but all latencies are recorded.
+     */
+    private static class LateController extends NoOpController {
+        @Override
+        public long currentTimestamp() {
+            return 1000000000L;
+        }
+
+        @Override
+        public long currentTimestampMicros() {
+            return 1000000000000L;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package nl.guitar.player;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+public class TempoMapTest {
+
+    @Test
+    public void testConvertsBeatsOverTempoChanges() {
+        TempoMap tempoMap = new TempoMap(120);
+        tempoMap.setTempo(8, 60);
+        tempoMap.setTempo(12, 240);
+
+        assertEquals(tempoMap.toMillis(0), 0);
+        assertEquals(tempoMap.toMillis(4), 2000);
+        assertEquals(tempoMap.toMillis(8), 4000);
+        assertEquals(tempoMap.toMillis(10), 6000);
+        assertEquals(tempoMap.toMillis(12), 8000);
+        assertEquals(tempoMap.toMillis(16), 9000);
+        assertEquals(tempoMap.getTempo(11.5), 60f);
+        assertEquals(tempoMap.getChangeCount(), 2);
+    }
+
+    @Test
+    public void testChangeOnSameBeatReplacesTempo() {
+        TempoMap tempoMap = new TempoMap();
+        tempoMap.setTempo(0, 120);
+        tempoMap.setTempo(0, 90);
+
+        assertEquals(tempoMap.getChangeCount(), 0);
+        assertEquals(tempoMap.toMillis(3), 2000);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testChangesHaveToBeInOrder() {
+        TempoMap tempoMap = new TempoMap();
+        tempoMap.setTempo(4, 120);
+        tempoMap.setTempo(2, 90);
+    }
+}
@@ -0,0 +1,114 @@
+package nl.guitar.player;
+
+import nl.guitar.data.ConfigRepository;
+import nl.guitar.player.object.GuitarAction;
+import nl.guitar.player.object.GuitarNote;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TimelineCompilerTest {
+
+    @Test
+    public void testPhasesAreSortedOnDeadline() {
+        ServoTimeline timeline = compile(action(0, 1000, 100, 2), action(1, 1100, 100, 3));
+
+        List<Long> times = new ArrayList<>();
+        List<Integer> played = new ArrayList<>();
+        for (int i = 0; i < timeline.size(); i++) {
+            times.add(timeline.time(i));
+            if (timeline.board(i) == ServoTimeline.ACTION_PLAYED) {
+                played.add(timeline.action(i));
+            }
+        }
+        List<Long> sorted = new ArrayList<>(times);
+        sorted.sort(Long::compare);
+        assertEquals(times, sorted);
+        assertEquals(played, Arrays.asList(0, 1));
+        assertEquals(timeline.time(0), 850);
+        assertEquals(timeline.time(timeline.size() - 1), 1100);
+        assertTrue(timeline.isFinished());
+    }
+
+    @Test
+    public void testHitAlternatesPlectrum() {
+        ConfigRepository configRepository = new ConfigRepository();
+        boolean[] isStringUp = new boolean[] { true, true, true, true, true, true };
+        ServoTimeline timeline = new ServoTimeline(16);
+        TimelineCompiler compiler = new TimelineCompiler(timeline, configRepository.loadPlectrumConfig(),
+                configRepository.loadFredConfig(), new long[] { 16, 16, 16, 16, 16, 16 }, new int[6], isStringUp);
+        compiler.append(action(0, 1000, 100, 0));
+        compiler.finish();
+
+        // moved up while preparing, down on the hit
+        assertFalse(isStringUp[0]);
+    }
+
+    @Test
+    public void testOnlyWritesPhasesNoLaterActionCanPrecede() {
+        ConfigRepository configRepository = new ConfigRepository();
+        ServoTimeline timeline = new ServoTimeline(16);
+        TimelineCompiler compiler = new TimelineCompiler(timeline, configRepository.loadPlectrumConfig(),
+                configRepository.loadFredConfig(), new long[] { 16, 16, 16, 16, 16, 16 }, new int[6], new boolean[6]);
+        compiler.append(action(0, 1000, 500, 0));
+
+        // everything up to 1350 is safe, the next action starts preparing at 1350 at the earliest
+        assertTrue(timeline.size() > 0);
+        assertEquals(timeline.board(timeline.size() - 1), ServoTimeline.ACTION_PLAYED);
+        assertFalse(timeline.isFinished());
+    }
+
+    @Test
+    public void testSameStringIsPreparedAfterItsLastStrike() {
+        ServoTimeline timeline = compile(action(0, 1000, 80, 2), action(1, 1080, 100, 3));
+
+        for (int i = 0; i < timeline.size(); i++) {
+            if (timeline.action(i) == 1) {
+                assertTrue(timeline.time(i) > 1000, "action 1 prepared at " + timeline.time(i));
+            }
+        }
+    }
+
+    @Test
+    public void testOtherStringsKeepTheFullPrepareTime() {
+        GuitarAction other = action(1, 1080, 100, 3);
+        other.notesToPlay.clear();
+        other.notesToPlay.add(new GuitarNote((short) 1, 3, true, 36));
+        ServoTimeline timeline = compile(action(0, 1000, 80, 2), other);
+
+        long first = Long.MAX_VALUE;
+        for (int i = 0; i < timeline.size(); i++) {
+            if (timeline.action(i) == 1) {
+                first = Math.min(first, timeline.time(i));
+            }
+        }
+        assertEquals(first, 1080 - GuitarPlayer.PREPARE_TIME);
+    }
+
+    private static ServoTimeline compile(GuitarAction... actions) {
+        ConfigRepository configRepository = new ConfigRepository();
+        ServoTimeline timeline = new ServoTimeline(16);
+        TimelineCompiler compiler = new TimelineCompiler(timeline, configRepository.loadPlectrumConfig(),
+                configRepository.loadFredConfig(), new long[] { 16, 16, 16, 16, 16, 16 }, new int[6], new boolean[6]);
+        for (GuitarAction action : actions) {
+            compiler.append(action);
+        }
+        compiler.finish();
+        return timeline;
+    }
+
+    static GuitarAction action(int instructionNumber, long timeStamp, long timeTillNextNote, int fred) {
+        GuitarAction action = new GuitarAction();
+        action.instructionNumber = instructionNumber;
+        action.timeStamp = timeStamp;
+        action.timeTillNextNote = timeTillNextNote;
+        action.notesToPlay.add(new GuitarNote((short) 0, fred, true, 28 + fred));
+        return action;
+    }
+}
@@ -0,0 +1,75 @@
+package nl.guitar.player.strategy;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class StringPlannerTest {
+    private static final int[] START = { 28, 33, 38, 43, 47, 52 };
+    private static final int[] END = { 35, 40, 45, 50, 54, 59 };
+    private static final long[] MIN_GAPS = { 150, 150, 150, 150, 150, 150 };
+
+    private final StringPlanner planner = new StringPlanner(START, END, MIN_GAPS);
+
+    @Test
+    public void testKeepsFretsPressed() {
+        int[][] notes = { { 35 }, { 33 }, { 35 }, { 33 } };
+        long[] gaps = { 500, 500, 500, 500 };
+
+        short[][] plan = planner.plan(notes, gaps);
+
+        // 35 on the 7th fret of the low string stays pressed, 33 is the open A string
+        assertEquals(Arrays.deepToString(plan), "[[0], [1], [0], [1]]");
+        assertEquals(planner.cost(notes, gaps, plan), 1);
+        short[][] lowestFret = { { 1 }, { 1 }, { 1 }, { 1 } };
+        assertEquals(planner.cost(notes, gaps, lowestFret), 4);
+    }
+
+    @Test
+    public void testAvoidsStrikingAStringAgainTooSoon() {
+        int[][] notes = { { 40 }, { 41 } };
+        long[] gaps = { 30, 500 };
+
+        short[][] plan = planner.plan(notes, gaps);
+
+        assertTrue(plan[0][0] != plan[1][0], Arrays.deepToString(plan));
+    }
+
+    @Test
+    public void testChordUsesDistinctStrings() {
+        short[][] plan = planner.plan(new int[][] { { 40, 45, 50 } }, new long[] { 500 });
+
+        assertTrue(plan[0][0] != plan[0][1] && plan[0][1] != plan[0][2] && plan[0][0] != plan[0][2],
+                Arrays.toString(plan[0]));
+    }
+
+    @Test
+    public void testUnplayableNote() {
+        short[][] plan = planner.plan(new int[][] { { 20, 40 } }, new long[] { 500 });
+
+        assertEquals(plan[0][0], -1);
+        assertTrue(plan[0][1] >= 0);
+    }
+
+    @Test(timeOut = 5000)
+    public void testLargeScore() {
+        Random random = new Random(42);
+        int[][] notes = new int[20000][];
+        long[] gaps = new long[notes.length];
+        for (int i = 0; i < notes.length; i++) {
+            notes[i] = new int[1 + random.nextInt(3)];
+            for (int j = 0; j < notes[i].length; j++) {
+                notes[i][j] = 28 + random.nextInt(32);
+            }
+            gaps[i] = 50 + random.nextInt(400);
+        }
+
+        short[][] plan = planner.plan(notes, gaps);
+
+        assertEquals(plan.length, notes.length);
+    }
+}
@@ -0,0 +1,66 @@
+package nl.guitar.player.strategy;
+
+import nl.guitar.data.ConfigRepository;
+import nl.guitar.player.tuning.DropDTuning;
+import nl.guitar.player.tuning.GuitarTuning;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class StringStrategyTest {
+    private static final int[] FREE = { -1, -1, -1, -1, -1, -1 };
+
+    private final GuitarTuning tuning = new DropDTuning(new ConfigRepository());
+
+    @Test
+    public void testStringMaskMatchesRanges() {
+        for (int note = 0; note < GuitarTuning.NOTES; note++) {
+            for (int string = 0; string < 6; string++) {
+                boolean fits = note >= tuning.getStartNote(string) && note <= tuning.getEndNote(string);
+                assertEquals((tuning.getStringMask(note) & 1 << string) != 0, fits, "note " + note + " string " + string);
+                assertEquals(tuning.getFret(note, string), fits ? note - tuning.getStartNote(string) : -1);
+            }
+        }
+        assertEquals(tuning.getStringMask(-1), 0);
+        assertEquals(tuning.getStringMask(GuitarTuning.NOTES), 0);
+    }
+
+    @Test
+    public void testStrategiesPickFromTheMask() {
+        int mask = 0b011010;
+        assertEquals(new HighStringStrategy().getBestString(mask, FREE, 40), 4);
+        assertEquals(new LowStringStrategy().getBestString(mask, FREE, 40), 1);
+        assertEquals(new ComplexStringStrategy(tuning).getBestString(mask, FREE, 40), 4);
+        assertEquals(new LowStringStrategy().getBestString(0, FREE, 40), StringStrategy.NO_STRING);
+    }
+
+    @Test
+    public void testTakenStringsAreSkippedUnlessTheyHoldTheNote() {
+        int[] taken = { -1, 41, 40, -1, -1, -1 };
+        assertEquals(new LowStringStrategy().getBestString(0b000110, taken, 40), 2);
+        assertEquals(new LowStringStrategy().getBestString(0b000010, taken, 40), StringStrategy.NO_STRING);
+    }
+
+    @Test
+    public void testMaskOfTheTuning() {
+        // a note that fits on more than one string
+        int note = 0;
+        while (Integer.bitCount(tuning.getStringMask(note)) < 2) {
+            note++;
+        }
+        int lowest = -1;
+        int highest = -1;
+        for (int string = 0; string < 6; string++) {
+            if (note >= tuning.getStartNote(string) && note <= tuning.getEndNote(string)) {
+                lowest = lowest == -1 ? string : lowest;
+                highest = string;
+            }
+        }
+        assertTrue(highest > lowest);
+
+        int mask = tuning.getStringMask(note);
+        assertEquals(new HighStringStrategy().getBestString(mask, FREE, note), highest);
+        assertEquals(new LowStringStrategy().getBestString(mask, FREE, note), lowest);
+    }
+}
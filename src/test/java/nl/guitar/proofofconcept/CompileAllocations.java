@@ -0,0 +1,82 @@
+package nl.guitar.proofofconcept;
+
+import nl.guitar.controlers.NoOpController;
+import nl.guitar.data.ConfigRepository;
+import nl.guitar.musicxml.LocalDtdResolver;
+import nl.guitar.musicxml.MusicXmlParserListener;
+import nl.guitar.player.GuitarPlayer;
+import nl.guitar.player.tuning.DropDTuning;
+import nl.guitar.player.tuning.GuitarTuning;
+import org.jfugue.integration.MusicXmlParser;
+import org.jfugue.parser.ParserListenerAdapter;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Bytes allocated while compiling every score in the music folder, the second of two rounds so the JIT settled.
+ * The listener column is what compiling added on top of only parsing the score into a listener that does nothing.
+ * Run from the project root with the test classpath.
+ */
+public class CompileAllocations {
+    public static void main(String[] args) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ConfigRepository configRepository = new ConfigRepository();
+        GuitarPlayer guitarPlayer = new GuitarPlayer(new NoOpController(), configRepository);
+        GuitarTuning tuning = new DropDTuning(configRepository);
+        File[] scores = new File(args.length > 0 ? args[0] : "music").listFiles((f) -> f.getName().endsWith(".xml"));
+        Arrays.sort(scores);
+
+        for (int round = 0; round < 2; round++) {
+            long totalBytes = 0;
+            long totalListenerBytes = 0;
+            long totalActions = 0;
+            for (File score : scores) {
+                long parseBytes;
+                try {
+                    parseBytes = allocatedWhileParsing(threads, score);
+                } catch (Exception e) {
+                    if (round == 1) {
+                        System.out.printf("%-45s failed: %s\n", score.getName(), e.getMessage());
+                    }
+                    continue;
+                }
+                MusicXmlParser parser = new MusicXmlParser(new LocalDtdResolver(new File("musicxml")));
+                MusicXmlParserListener listener = new MusicXmlParserListener(guitarPlayer, tuning);
+                parser.addParserListener(listener);
+                long start = System.nanoTime();
+                long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                try {
+                    parser.parse(score);
+                    parser.fireAfterParsingFinished();
+                } catch (Exception e) {
+                    continue;
+                }
+                long bytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+                long millis = (System.nanoTime() - start) / 1000000;
+                int actions = listener.guitarActions().size();
+                long listenerBytes = Math.max(0, bytes - parseBytes);
+                totalBytes += bytes;
+                totalListenerBytes += listenerBytes;
+                totalActions += actions;
+                if (round == 1) {
+                    System.out.printf("%-45s %6d actions %8d KB total %8d KB listener %6d B/action %5d ms\n", score.getName(), actions,
+                            bytes / 1024, listenerBytes / 1024, actions == 0 ? 0 : listenerBytes / actions, millis);
+                }
+            }
+            if (round == 1) {
+                System.out.printf("%-45s %6d actions %8d KB total %8d KB listener %6d B/action\n", "total", totalActions,
+                        totalBytes / 1024, totalListenerBytes / 1024, totalActions == 0 ? 0 : totalListenerBytes / totalActions);
+            }
+        }
+    }
+
+    private static long allocatedWhileParsing(com.sun.management.ThreadMXBean threads, File score) throws Exception {
+        MusicXmlParser parser = new MusicXmlParser(new LocalDtdResolver(new File("musicxml")));
+        parser.addParserListener(new ParserListenerAdapter());
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        parser.parse(score);
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+    }
+}
@@ -0,0 +1,77 @@
+package nl.guitar.resource;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ConditionalDownloadTest {
+
+    @Test
+    public void testGzipNegotiation() {
+        assertTrue(ConditionalDownload.acceptsGzip("gzip, deflate, br"));
+        assertTrue(ConditionalDownload.acceptsGzip("br;q=1.0, GZIP;q=0.5"));
+        assertTrue(ConditionalDownload.acceptsGzip("*"));
+        assertFalse(ConditionalDownload.acceptsGzip(null));
+        assertFalse(ConditionalDownload.acceptsGzip("identity"));
+        assertFalse(ConditionalDownload.acceptsGzip("gzip;q=0"));
+        assertFalse(ConditionalDownload.acceptsGzip("*, gzip;q=0"));
+    }
+
+    @Test
+    public void testRevalidation() {
+        String plain = ConditionalDownload.entityTag("abc", false);
+        String gzipped = ConditionalDownload.entityTag("abc", true);
+        assertEquals(plain, "\"abc\"");
+        assertNotEquals(gzipped, plain);
+
+        assertTrue(ConditionalDownload.isNotModified("\"abc\"", -1, plain, 5000));
+        assertTrue(ConditionalDownload.isNotModified("\"other\", W/\"abc\"", -1, plain, 5000));
+        assertTrue(ConditionalDownload.isNotModified("*", -1, plain, 5000));
+        assertFalse(ConditionalDownload.isNotModified("\"abc\"", -1, gzipped, 5000));
+        // the tag decides when both are sent
+        assertFalse(ConditionalDownload.isNotModified("\"old\"", 9000, plain, 5000));
+
+        assertTrue(ConditionalDownload.isNotModified(null, 5000, plain, 5999));
+        assertFalse(ConditionalDownload.isNotModified(null, 5000, plain, 6000));
+        assertFalse(ConditionalDownload.isNotModified(null, -1, plain, 5000));
+    }
+
+    @Test
+    public void testWritesFileAndGzip() throws Exception {
+        File file = Files.createTempFile("score", ".xml").toFile();
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            content.append("<note>").append(i).append("</note>");
+        }
+        Files.write(file.toPath(), content.toString().getBytes("UTF-8"));
+
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        ConditionalDownload.write(file, plain);
+        assertEquals(plain.toString("UTF-8"), content.toString());
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream out = ConditionalDownload.gzip(compressed);
+        ConditionalDownload.write(file, out);
+        out.finish();
+        assertTrue(compressed.size() < plain.size() / 4);
+        ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+        ConditionalDownload.write(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())), inflated);
+        assertEquals(inflated.toString("UTF-8"), content.toString());
+
+        byte[] once = ConditionalDownload.gzipAll(new ByteArrayInputStream(plain.toByteArray()));
+        assertTrue(once.length <= compressed.size());
+        inflated.reset();
+        ConditionalDownload.write(new GZIPInputStream(new ByteArrayInputStream(once)), inflated);
+        assertEquals(inflated.toString("UTF-8"), content.toString());
+    }
+}
@@ -0,0 +1,271 @@
+package org.jfugue.integration;
+
+import nl.guitar.musicxml.LocalDtdResolver;
+import org.jfugue.parser.ParserListenerAdapter;
+import org.jfugue.parser.PrimitiveNoteListener;
+import nu.xom.ParsingException;
+import org.jfugue.theory.Chord;
+import org.jfugue.theory.Note;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
+
+public class MusicXmlParserTest {
+
+    @Test
+    public void testParallelPartsGiveTheSequentialEvents() throws Exception {
+        String score = new String(Files.readAllBytes(Paths.get("src/test/resources/two_parts.xml")), StandardCharsets.UTF_8);
+
+        List<String> sequential = parse(score, false);
+        List<String> parallel = parse(score, true);
+
+        assertTrue(sequential.contains("note E2ha90 velocity 90"), sequential.toString());
+        assertTrue(sequential.contains("note E2wa40 velocity 40"), sequential.toString());
+        assertEquals(parallel, sequential);
+    }
+
+    @Test
+    public void testParallelPartsOfALargeScore() throws Exception {
+        String score = new String(Files.readAllBytes(Paths.get("music/flight_of_the_bumblebee.xml")), StandardCharsets.UTF_8);
+        int start = score.indexOf("<part id=");
+        int end = score.lastIndexOf("</part>") + "</part>".length();
+        String part = score.substring(start, end);
+        String threeParts = score.substring(0, end) + part + part + score.substring(end);
+
+        List<String> sequential = parse(threeParts, false);
+        List<String> parallel = parse(threeParts, true);
+
+        assertTrue(sequential.size() > 1000);
+        assertEquals(parallel, sequential);
+    }
+
+    @Test
+    public void testStreamingGivesTheEventsOfTheDocumentParser() throws Exception {
+        File[] scores = new File("music").listFiles((f) -> f.getName().endsWith(".xml"));
+        File[] testScores = new File("src/test/resources").listFiles((f) -> f.getName().endsWith(".xml"));
+        List<File> files = new ArrayList<>(Arrays.asList(scores));
+        files.addAll(Arrays.asList(testScores));
+        assertTrue(files.size() > 20);
+
+        for (File file : files) {
+            List<String> document;
+            try {
+                document = parse(file, false);
+            } catch (ParsingException e) {
+                assertThrows(ParsingException.class, () -> parse(file, true));
+                continue;
+            }
+            List<String> streaming = parse(file, true);
+            assertEquals(streaming, document, file.getName());
+        }
+    }
+
+    @Test
+    public void testStreamingATimeWiseScore() throws Exception {
+        String score = "<score-timewise>"
+                + "<part-list><score-part id=\"P1\"><part-name>A</part-name></score-part>"
+                + "<score-part id=\"P2\"><part-name>B</part-name></score-part></part-list>"
+                + "<measure number=\"1\">"
+                + "<part id=\"P1\"><attributes><divisions>1</divisions></attributes>"
+                + "<note><pitch><step>C</step><octave>4</octave></pitch><duration>1</duration><lyric><text>la</text></lyric></note></part>"
+                + "<part id=\"P2\"><harmony><root><root-step>G</root-step></root><kind>major</kind></harmony>"
+                + "<note><rest/><duration>1</duration></note></part>"
+                + "</measure></score-timewise>";
+
+        List<String> document = parse(score, false, false);
+        List<String> streaming = parse(score, false, true);
+
+        assertTrue(document.contains("lyric la"), document.toString());
+        assertEquals(streaming, document);
+    }
+
+    @Test
+    public void testCompressedScoreGivesTheEventsOfTheUncompressedOne() throws Exception {
+        File score = new File("music/Dust-all.xml");
+        File folder = Files.createTempDirectory("mxl").toFile();
+        File compressed = new File(folder, "Dust-all.mxl");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(compressed))) {
+            zip.putNextEntry(new ZipEntry("META-INF/container.xml"));
+            zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?><container><rootfiles>"
+                    + "<rootfile full-path=\"score/Dust-all.xml\" media-type=\"application/vnd.recordare.musicxml+xml\"/>"
+                    + "</rootfiles></container>").getBytes(StandardCharsets.UTF_8));
+            // not the score, the container says which entry is
+            zip.putNextEntry(new ZipEntry("a.xml"));
+            zip.write("<score-partwise/>".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("score/Dust-all.xml"));
+            zip.write(Files.readAllBytes(score.toPath()));
+        }
+        assertTrue(compressed.length() * 5 < score.length());
+
+        List<String> uncompressed = parse(score, false);
+        assertTrue(uncompressed.size() > 100);
+        assertEquals(parse(compressed, false), uncompressed);
+        assertEquals(parse(compressed, true), uncompressed);
+    }
+
+    @Test
+    public void testCompressedScoreWithoutContainer() throws Exception {
+        File folder = Files.createTempDirectory("mxl").toFile();
+        File compressed = new File(folder, "two_parts.mxl");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(compressed))) {
+            zip.putNextEntry(new ZipEntry("two_parts.xml"));
+            zip.write(Files.readAllBytes(Paths.get("src/test/resources/two_parts.xml")));
+        }
+
+        assertEquals(parse(compressed, false), parse(new File("src/test/resources/two_parts.xml"), false));
+    }
+
+    @Test
+    public void testCompressedScoreWithoutScore() throws Exception {
+        File folder = Files.createTempDirectory("mxl").toFile();
+        File compressed = new File(folder, "empty.mxl");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(compressed))) {
+            zip.putNextEntry(new ZipEntry("readme.txt"));
+        }
+
+        assertThrows(ZipException.class, () -> parse(compressed, false));
+    }
+
+    @Test
+    public void testPrimitiveNoteEventsMatchTheNotes() throws Exception {
+        String score = new String(Files.readAllBytes(Paths.get("src/test/resources/two_parts.xml")), StandardCharsets.UTF_8);
+        MusicXmlParser parser = new MusicXmlParser(new LocalDtdResolver(new File("./musicxml")));
+        NoteRecorder notes = new NoteRecorder();
+        PrimitiveNoteRecorder noteEvents = new PrimitiveNoteRecorder();
+        parser.addParserListener(notes);
+        parser.addParserListener(noteEvents);
+        parser.parse(score);
+
+        assertEquals(noteEvents.events.size(), 8);
+        assertEquals(noteEvents.events, notes.events);
+        assertEquals(noteEvents.events.get(1), "55 0.25 " + PrimitiveNoteListener.CHORD);
+        assertEquals(noteEvents.events.get(2), "0 0.25 " + PrimitiveNoteListener.REST);
+    }
+
+    @Test
+    public void testPrimitiveNoteEventsInParallel() throws Exception {
+        String score = new String(Files.readAllBytes(Paths.get("src/test/resources/two_parts.xml")), StandardCharsets.UTF_8);
+        List<List<String>> runs = new ArrayList<>();
+        for (boolean parallelParts : new boolean[] {false, true}) {
+            MusicXmlParser parser = new MusicXmlParser(new LocalDtdResolver(new File("./musicxml")));
+            parser.setParallelParts(parallelParts);
+            PrimitiveNoteRecorder noteEvents = new PrimitiveNoteRecorder();
+            parser.addParserListener(noteEvents);
+            parser.parse(score);
+            runs.add(noteEvents.events);
+        }
+        assertEquals(runs.get(1), runs.get(0));
+    }
+
+    private static List<String> parse(String score, boolean parallelParts) throws Exception {
+        return parse(score, parallelParts, false);
+    }
+
+    private static List<String> parse(String score, boolean parallelParts, boolean streaming) throws Exception {
+        MusicXmlParser parser = new MusicXmlParser(new LocalDtdResolver(new File("./musicxml")));
+        parser.setParallelParts(parallelParts);
+        parser.setStreaming(streaming);
+        EventRecorder recorder = new EventRecorder();
+        parser.addParserListener(recorder);
+        parser.parse(score);
+        return recorder.events;
+    }
+
+    private static List<String> parse(File score, boolean streaming) throws Exception {
+        MusicXmlParser parser = new MusicXmlParser(new LocalDtdResolver(new File("./musicxml")));
+        parser.setStreaming(streaming);
+        EventRecorder recorder = new EventRecorder();
+        parser.addParserListener(recorder);
+        parser.parse(score);
+        return recorder.events;
+    }
+
+    private static class NoteRecorder extends ParserListenerAdapter {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onNoteParsed(Note note) {
+            int flags = (note.isHarmonicNote() ? PrimitiveNoteListener.CHORD : 0) | (note.isRest() ? PrimitiveNoteListener.REST : 0)
+                    | (note.isStartOfTie() ? PrimitiveNoteListener.TIE_START : 0) | (note.isEndOfTie() ? PrimitiveNoteListener.TIE_END : 0);
+            events.add(note.getValue() + " " + note.getDuration() + " " + flags);
+        }
+    }
+
+    private static class PrimitiveNoteRecorder extends ParserListenerAdapter implements PrimitiveNoteListener {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onNoteParsed(Note note) {
+            throw new AssertionError("Got a Note instead of a note event");
+        }
+
+        @Override
+        public void onNoteEvent(byte value, double duration, int flags) {
+            events.add(value + " " + duration + " " + flags);
+        }
+    }
+
+    private static class EventRecorder extends ParserListenerAdapter {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onTrackChanged(byte track) {
+            events.add("track " + track);
+        }
+
+        @Override
+        public void onLayerChanged(byte layer) {
+            events.add("layer " + layer);
+        }
+
+        @Override
+        public void onInstrumentParsed(byte instrument) {
+            events.add("instrument " + instrument);
+        }
+
+        @Override
+        public void onTempoChanged(int tempoBPM) {
+            events.add("tempo " + tempoBPM);
+        }
+
+        @Override
+        public void onKeySignatureParsed(byte key, byte scale) {
+            events.add("key " + key + " " + scale);
+        }
+
+        @Override
+        public void onBarLineParsed(long id) {
+            events.add("bar " + id);
+        }
+
+        @Override
+        public void onNoteParsed(Note note) {
+            events.add("note " + note.toString() + " velocity " + note.getOnVelocity()
+                    + (note.isHarmonicNote() ? " chord" : ""));
+        }
+
+        @Override
+        public void onChordParsed(Chord chord) {
+            events.add("chord " + chord.toString());
+        }
+
+        @Override
+        public void onLyricParsed(String lyric) {
+            events.add("lyric " + lyric);
+        }
+    }
+}